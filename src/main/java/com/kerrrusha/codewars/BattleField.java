@@ -1,201 +1,163 @@
 package com.kerrrusha.codewars;
 
-public class BattleField {
-
-    static int[][] field;
-    static int rows;
-    static int cols;
+import java.util.Arrays;
 
-    static int battleships;
-    static int cruisers;
-    static int destroyers;
-    static int submarines;
+// A validator instance keeps the state of the board it is checking, so it must not be shared between threads
+// while validating; fieldValidator gives every thread its own instance, so it can be called concurrently.
+// The board is scanned once, row by row: horizontal ships are counted when their run in the row ends, vertical
+// ships are carried from row to row in a per-column run length, and the scan stops at the first violation.
+// Only the previous row is looked at besides the current one, so a streamed board takes O(cols) memory.
+public class BattleField {
 
     static final int REQUIRED_BATTLESHIPS = 1;
     static final int REQUIRED_CRUISERS = 2;
     static final int REQUIRED_DESTROYERS = 3;
     static final int REQUIRED_SUBMARINES = 4;
 
+    private static final ThreadLocal<BattleField> VALIDATOR = ThreadLocal.withInitial(BattleField::new);
+
+    private final FleetRules rules;
+    private int cols;
+
+    // ships found so far, index is the ship length
+    private final int[] ships;
+
+    // cells of the vertical ship that ends in the previous row at each column, reused between validations
+    private int[] columnRuns = new int[0];
+    // copy of the last row offered while streaming
+    private int[] lastRow = new int[0];
+    private long rowsOffered;
+    private boolean rejected;
+
+    public BattleField() {
+        this(FleetRules.CLASSIC);
+    }
+
+    public BattleField(FleetRules rules) {
+        this.rules = rules;
+        this.ships = new int[rules.maxShipLength() + 1];
+    }
+
     public static boolean fieldValidator(int[][] field) {
-        initStaticFields(field);
+        return VALIDATOR.get().validate(field);
+    }
 
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                if (field[i][j] != 1) {
-                    continue;
-                }
-                if (badCorner(i, j) || badEdge(i, j)) {
-                    return false;
-                }
-            }
+    public boolean validate(int[][] field) {
+        begin(field.length == 0 ? 0 : field[0].length);
+        // every row is checked, as offer would, even when the board turns out invalid before a short row
+        for (int i = 0; i < field.length; i++) {
+            requireWidth(field[i], i);
         }
-        try {
-            countShips();
-            if (!shipsAmountIsValid()) {
+        int[] previousRow = null;
+        for (int[] row : field) {
+            if (!scanRow(previousRow, row)) {
                 return false;
             }
-        } catch (InvalidShipSizeException e) {
-            return false;
+            previousRow = row;
         }
-        return true;
+        return finish();
     }
 
-    private static boolean shipsAmountIsValid() {
-        return battleships == REQUIRED_BATTLESHIPS &&
-                cruisers == REQUIRED_CRUISERS &&
-                destroyers == REQUIRED_DESTROYERS &&
-                submarines == REQUIRED_SUBMARINES;
+    // Row-streaming validation, for boards that are never held whole: begin with the width of the board, offer its
+    // rows top to bottom, then finish. The rows offered may be reused by the caller, since the validator keeps its
+    // own copy of the last one.
+    public void begin(int cols) {
+        if (cols < 0) {
+            throw new IllegalArgumentException("Board cannot have negative number of columns: " + cols);
+        }
+        this.cols = cols;
+        if (columnRuns.length < cols) {
+            columnRuns = new int[cols];
+            lastRow = new int[cols];
+        }
+        Arrays.fill(columnRuns, 0, cols, 0);
+        Arrays.fill(ships, 0);
+        rowsOffered = 0;
+        rejected = false;
     }
 
-    private static void countShips() {
-        final int[][] fieldCopy = new int[rows][cols];
-        for(int i = 0; i < rows; i++) {
-            fieldCopy[i] = field[i].clone();
+    // Returns false as soon as the rows so far cannot be part of a valid board; later rows are then ignored.
+    public boolean offer(int[] row) {
+        requireWidth(row, rowsOffered);
+        if (rejected) {
+            return false;
         }
-        checkVertically(fieldCopy);
-        checkHorizontally(fieldCopy);
+        rejected = !scanRow(rowsOffered == 0 ? null : lastRow, row);
+        System.arraycopy(row, 0, lastRow, 0, cols);
+        rowsOffered++;
+        return !rejected;
     }
 
-    private static void checkVertically(int[][] fieldCopy) {
+    public boolean finish() {
+        if (rejected) {
+            return false;
+        }
         for (int j = 0; j < cols; j++) {
-            for (int i = 0; i < rows; i++) {
-                int cells = 0;
-                while (fieldCopy[i + cells][j] == 1 && noHorizontalOverlaps(fieldCopy, i + cells, j)) {
-                    fieldCopy[i + cells][j] = 0;
-                    cells++;
-                    if (i + cells >= rows) {
-                        break;
-                    }
-                }
-                if (cells == 0) {
-                    continue;
-                }
-                analyzeCellsCount(cells);
-                i += cells;
+            if (columnRuns[j] > 0 && !addShip(columnRuns[j])) {
+                return false;
             }
         }
+        return shipsAmountIsValid();
     }
 
-    private static boolean noHorizontalOverlaps(int[][] fieldCopy, int i, int j) {
-        if (j - 1 >= 0) {
-            if (fieldCopy[i][j - 1] == 1) {
-                return false;
-            }
-        }
-        if (j + 1 < cols) {
-            if (fieldCopy[i][j + 1] == 1) {
-                return false;
-            }
+    private void requireWidth(int[] row, long index) {
+        if (row.length < cols) {
+            throw new IllegalArgumentException("Row " + index + " has " + row.length + " cells, but the board has " + cols + " columns");
         }
-        return true;
     }
 
-    private static void checkHorizontally(int[][] fieldCopy) {
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                int cells = 0;
-                while (fieldCopy[i][j + cells] == 1 && noVerticalOverlaps(fieldCopy, i, j + cells)) {
-                    fieldCopy[i][j + cells] = 0;
-                    cells++;
-                    if (j + cells >= cols) {
-                        break;
-                    }
-                }
-                if (cells == 0) {
-                    continue;
+    private boolean scanRow(int[] previousRow, int[] row) {
+        int run = 0;
+        for (int j = 0; j <= cols; j++) {
+            if (j < cols && row[j] == 1) {
+                if (previousRow != null && touchesPreviousRow(previousRow, row, j)) {
+                    return false;
                 }
-                analyzeCellsCount(cells);
-                j += cells;
+                run++;
+                continue;
             }
-        }
-    }
-
-    private static boolean noVerticalOverlaps(int[][] fieldCopy, int i, int j) {
-        if (i - 1 >= 0) {
-            if (fieldCopy[i - 1][j] == 1) {
-                return false;
+            if (j < cols && columnRuns[j] > 0) {
+                if (!addShip(columnRuns[j])) {
+                    return false;
+                }
+                columnRuns[j] = 0;
             }
-        }
-        if (i + 1 < rows) {
-            if (fieldCopy[i + 1][j] == 1) {
+            if (run == 1) {
+                // a lone cell of the row starts or continues a vertical ship
+                if (++columnRuns[j - 1] >= ships.length) {
+                    return false;
+                }
+            } else if (run > 1 && !addShip(run)) {
                 return false;
             }
+            run = 0;
         }
         return true;
     }
 
-    private static void analyzeCellsCount(int cells) {
-        switch (cells) {
-            case 1 -> submarines++;
-            case 2 -> destroyers++;
-            case 3 -> cruisers++;
-            case 4 -> battleships++;
-            default -> throw new InvalidShipSizeException();
+    // Cells touching only at a corner make any other contact, like an L or a T, show up as well: every such shape
+    // has two cells touching diagonally. So without diagonal contact, each ship is a straight run once corners are
+    // checked. With diagonal contact allowed, a bend is a cell below another one with either of them having a
+    // neighbour in its row.
+    private boolean touchesPreviousRow(int[] previousRow, int[] row, int j) {
+        boolean corner = j - 1 >= 0 && previousRow[j - 1] == 1 || j + 1 < cols && previousRow[j + 1] == 1;
+        if (!rules.diagonalContactAllowed()) {
+            return corner;
         }
+        return previousRow[j] == 1 && (corner || j - 1 >= 0 && row[j - 1] == 1 || j + 1 < cols && row[j + 1] == 1);
     }
 
-    private static void initStaticFields(int[][] field) {
-        BattleField.field = field;
-        rows = field.length;
-        cols = field[0].length;
-
-        battleships = 0;
-        cruisers = 0;
-        destroyers = 0;
-        submarines = 0;
+    // Returns false for a ship of invalid size or one ship too many of its size.
+    private boolean addShip(int cells) {
+        return cells < ships.length && ++ships[cells] <= rules.shipCount(cells);
     }
 
-    static boolean badCorner(int i, int j) {
-        if (i - 1 >= 0 && j - 1 >= 0) {
-            if (field[i - 1][j - 1] == 1) {
-                return true;
-            }
-        }
-        if (i - 1 >= 0 && j + 1 < cols) {
-            if (field[i - 1][j + 1] == 1) {
-                return true;
-            }
-        }
-        if (i + 1 < rows && j + 1 < cols) {
-            if (field[i + 1][j + 1] == 1) {
-                return true;
-            }
-        }
-        if (i + 1 < rows && j - 1 >= 0) {
-            if (field[i + 1][j - 1] == 1) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    static boolean badEdge(int i, int j) {
-        boolean hasVerticalOverlap = false;
-        boolean hasHorizontalOverlap = false;
-        if (i - 1 >= 0) {
-            if (field[i - 1][j] == 1) {
-                hasVerticalOverlap = true;
-            }
-        }
-        if (j + 1 < cols) {
-            if (field[i][j + 1] == 1) {
-                hasHorizontalOverlap = true;
-            }
-        }
-        if (i + 1 < rows) {
-            if (field[i + 1][j] == 1) {
-                hasVerticalOverlap = true;
-            }
-        }
-        if (j - 1 >= 0) {
-            if (field[i][j - 1] == 1) {
-                hasHorizontalOverlap = true;
+    private boolean shipsAmountIsValid() {
+        for (int length = 1; length < ships.length; length++) {
+            if (ships[length] != rules.shipCount(length)) {
+                return false;
             }
         }
-        return hasHorizontalOverlap && hasVerticalOverlap;
-    }
-
-    private static class InvalidShipSizeException extends RuntimeException {
+        return true;
     }
-
-}
\ No newline at end of file
+}
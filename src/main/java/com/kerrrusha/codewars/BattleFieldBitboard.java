@@ -0,0 +1,118 @@
+package com.kerrrusha.codewars;
+
+// Validates 10x10 boards packed into two longs: rows 0-4 in the low word and rows 5-9 in the high word, ten bits
+// per row, cell (i, j) of a word at bit 10 * i + j. The checks of BattleField run on the whole board at once:
+// neighbours are found by shifting the words a column or a row (carrying the boundary row between the words),
+// and ships are counted by walking all run starts one cell at a time together.
+public final class BattleFieldBitboard {
+    static final int SIZE = 10;
+
+    private static final int HALF_ROWS = SIZE / 2;
+    private static final int LAST_ROW_SHIFT = (HALF_ROWS - 1) * SIZE;
+    static final long HALF_MASK = (1L << HALF_ROWS * SIZE) - 1;
+    private static final long ROW_MASK = (1L << SIZE) - 1;
+    private static final long FIRST_COLUMN = firstColumn();
+    private static final long LAST_COLUMN = FIRST_COLUMN << SIZE - 1;
+
+    private BattleFieldBitboard() {
+    }
+
+    public static boolean fieldValidator(int[][] field) {
+        return validate(packLow(field), packHigh(field));
+    }
+
+    // Rows 0-4 of the board, see the class comment for the layout.
+    public static long packLow(int[][] field) {
+        return pack(field, 0);
+    }
+
+    // Rows 5-9 of the board, see the class comment for the layout.
+    public static long packHigh(int[][] field) {
+        return pack(field, HALF_ROWS);
+    }
+
+    public static boolean validate(long low, long high) {
+        if ((low & ~HALF_MASK) != 0 || (high & ~HALF_MASK) != 0) {
+            throw new IllegalArgumentException("Packed board has bits outside of its 50 cells");
+        }
+        // what every cell sees in its neighbour above, below, to the left and to the right
+        long lowAbove = low << SIZE & HALF_MASK;
+        long highAbove = (high << SIZE | low >>> LAST_ROW_SHIFT) & HALF_MASK;
+        long lowBelow = low >>> SIZE | (high & ROW_MASK) << LAST_ROW_SHIFT;
+        long highBelow = high >>> SIZE;
+        long lowLeft = left(low);
+        long highLeft = left(high);
+        long lowRight = right(low);
+        long highRight = right(high);
+
+        // every touching diagonal pair has a cell that sees the other one above it
+        long badCorners = low & (left(lowAbove) | right(lowAbove)) | high & (left(highAbove) | right(highAbove));
+        long badEdges = low & (lowAbove | lowBelow) & (lowLeft | lowRight)
+                | high & (highAbove | highBelow) & (highLeft | highRight);
+        if (badCorners != 0 || badEdges != 0) {
+            return false;
+        }
+
+        int submarines = Long.bitCount(low & ~(lowAbove | lowBelow | lowLeft | lowRight))
+                + Long.bitCount(high & ~(highAbove | highBelow | highLeft | highRight));
+        if (submarines != BattleField.REQUIRED_SUBMARINES) {
+            return false;
+        }
+
+        // first cells of the horizontal and vertical ships, moved one cell further along their ship on every step
+        long lowRows = low & lowRight & ~lowLeft;
+        long highRows = high & highRight & ~highLeft;
+        long lowColumns = low & lowBelow & ~lowAbove;
+        long highColumns = high & highBelow & ~highAbove;
+        int[] atLeast = new int[6];
+        for (int length = 2; length < atLeast.length; length++) {
+            lowRows = lowRows << 1 & ~FIRST_COLUMN & low;
+            highRows = highRows << 1 & ~FIRST_COLUMN & high;
+            highColumns = (highColumns << SIZE | lowColumns >>> LAST_ROW_SHIFT) & high;
+            lowColumns = lowColumns << SIZE & low;
+            atLeast[length] = Long.bitCount(lowRows) + Long.bitCount(highRows)
+                    + Long.bitCount(lowColumns) + Long.bitCount(highColumns);
+        }
+        return atLeast[5] == 0
+                && atLeast[4] == BattleField.REQUIRED_BATTLESHIPS
+                && atLeast[3] - atLeast[4] == BattleField.REQUIRED_CRUISERS
+                && atLeast[2] - atLeast[3] == BattleField.REQUIRED_DESTROYERS;
+    }
+
+    // value of the cell to the left, nothing for the first column
+    private static long left(long cells) {
+        return cells << 1 & ~FIRST_COLUMN;
+    }
+
+    // value of the cell to the right, nothing for the last column
+    private static long right(long cells) {
+        return cells >>> 1 & ~LAST_COLUMN;
+    }
+
+    private static long pack(int[][] field, int firstRow) {
+        if (field.length != SIZE) {
+            throw new IllegalArgumentException("Bitboards hold " + SIZE + "x" + SIZE + " boards, but board has " + field.length + " rows");
+        }
+        long cells = 0;
+        for (int i = 0; i < HALF_ROWS; i++) {
+            int[] row = field[firstRow + i];
+            if (row.length != SIZE) {
+                throw new IllegalArgumentException("Bitboards hold " + SIZE + "x" + SIZE + " boards, but row " + (firstRow + i) + " has " + row.length + " cells");
+            }
+            for (int j = 0; j < SIZE; j++) {
+                if (row[j] == 1) {
+                    cells |= 1L << i * SIZE + j;
+                }
+            }
+        }
+        return cells;
+    }
+
+    private static long firstColumn() {
+        long column = 0;
+        for (int i = 0; i < HALF_ROWS; i++) {
+            column |= 1L << i * SIZE;
+        }
+        return column;
+    }
+}
@@ -0,0 +1,163 @@
+package com.kerrrusha.codewars;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// A board that ships are placed on, removed from and moved around, e.g. by a placement UI, and that knows after
+// every edit whether it is valid under its FleetRules. Every cell counts the ships on it and the ships whose halo
+// (the cells around a ship that another ship must not take) covers it; a running total of conflicts, that is
+// overlapping ships and ships in another ship's halo, and per-length counters are updated by each edit for the cells
+// of the ship and its halo only, so an edit and the validity check after it take O(ship length).
+public class BattleFieldBoard {
+    private final int rows;
+    private final int cols;
+    private final FleetRules rules;
+
+    private final int[] ships;
+    private final int[] halos;
+    private long conflicts;
+
+    // placed ships by length, index is the length; lengths the rules do not have are counted together
+    private final int[] shipsByLength;
+    private int unexpectedShips;
+    private int lengthsOffCount;
+
+    private final Map<Ship, Integer> placed = new HashMap<>();
+
+    public BattleFieldBoard() {
+        this(BattleFieldBitboard.SIZE, BattleFieldBitboard.SIZE, FleetRules.CLASSIC);
+    }
+
+    public BattleFieldBoard(int rows, int cols, FleetRules rules) {
+        if (rows <= 0 || cols <= 0) {
+            throw new IllegalArgumentException("Board must have rows and columns, but had: " + rows + "x" + cols);
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.rules = rules;
+        this.ships = new int[rows * cols];
+        this.halos = new int[rows * cols];
+        this.shipsByLength = new int[rules.maxShipLength() + 1];
+        for (int length = 1; length < shipsByLength.length; length++) {
+            if (rules.shipCount(length) != 0) {
+                lengthsOffCount++;
+            }
+        }
+    }
+
+    public void place(Ship ship) {
+        requireOnBoard(ship);
+        update(ship, 1);
+        placed.merge(ship, 1, Integer::sum);
+    }
+
+    public void remove(Ship ship) {
+        Integer count = placed.get(ship);
+        if (count == null) {
+            throw new IllegalArgumentException("Ship is not on the board: " + ship);
+        }
+        if (count == 1) {
+            placed.remove(ship);
+        } else {
+            placed.put(ship, count - 1);
+        }
+        update(ship, -1);
+    }
+
+    // Moves the ship so that its first cell is at (row, col), keeping its length and direction.
+    public Ship move(Ship ship, int row, int col) {
+        Ship moved = new Ship(row, col, ship.length(), ship.vertical());
+        requireOnBoard(moved);
+        remove(ship);
+        place(moved);
+        return moved;
+    }
+
+    public boolean isValid() {
+        return conflicts == 0 && unexpectedShips == 0 && lengthsOffCount == 0;
+    }
+
+    // Pairs of ships sharing a cell, summed over cells, plus cells of a ship inside another ship's halo, counted once
+    // per such halo.
+    public long conflicts() {
+        return conflicts;
+    }
+
+    public int[][] toField() {
+        int[][] field = new int[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                field[i][j] = ships[i * cols + j] > 0 ? 1 : 0;
+            }
+        }
+        return field;
+    }
+
+    private void update(Ship ship, int delta) {
+        int rowStep = ship.vertical() ? 1 : 0;
+        int colStep = ship.vertical() ? 0 : 1;
+        updateCells(ship, rowStep, colStep, delta);
+        updateHalo(ship, rowStep, colStep, delta);
+        updateFleet(ship.length(), delta);
+    }
+
+    private void updateCells(Ship ship, int rowStep, int colStep, int delta) {
+        for (int k = 0; k < ship.length(); k++) {
+            int cell = (ship.row() + k * rowStep) * cols + ship.col() + k * colStep;
+            // the ship conflicts with every other ship on the cell and every halo over it
+            int others = delta > 0 ? ships[cell] : ships[cell] - 1;
+            conflicts += delta * ((long) others + halos[cell]);
+            ships[cell] += delta;
+        }
+    }
+
+    // The halo is the ring of cells around the ship, without its corners when ships may touch diagonally.
+    private void updateHalo(Ship ship, int rowStep, int colStep, int delta) {
+        int lastRow = ship.row() + (ship.length() - 1) * rowStep;
+        int lastCol = ship.col() + (ship.length() - 1) * colStep;
+        boolean corners = !rules.diagonalContactAllowed();
+        for (int i = ship.row() - 1; i <= lastRow + 1; i++) {
+            for (int j = ship.col() - 1; j <= lastCol + 1; j++) {
+                if (i < 0 || i >= rows || j < 0 || j >= cols) {
+                    continue;
+                }
+                boolean inShip = i >= ship.row() && i <= lastRow && j >= ship.col() && j <= lastCol;
+                boolean corner = (i < ship.row() || i > lastRow) && (j < ship.col() || j > lastCol);
+                if (inShip || corner && !corners) {
+                    continue;
+                }
+                int cell = i * cols + j;
+                halos[cell] += delta;
+                conflicts += (long) delta * ships[cell];
+            }
+        }
+    }
+
+    private void updateFleet(int length, int delta) {
+        if (length >= shipsByLength.length) {
+            unexpectedShips += delta;
+            return;
+        }
+        boolean offBefore = shipsByLength[length] != rules.shipCount(length);
+        shipsByLength[length] += delta;
+        boolean offAfter = shipsByLength[length] != rules.shipCount(length);
+        lengthsOffCount += (offAfter ? 1 : 0) - (offBefore ? 1 : 0);
+    }
+
+    private void requireOnBoard(Ship ship) {
+        int lastRow = ship.row() + (ship.vertical() ? ship.length() - 1 : 0);
+        int lastCol = ship.col() + (ship.vertical() ? 0 : ship.length() - 1);
+        if (ship.row() < 0 || ship.col() < 0 || lastRow >= rows || lastCol >= cols) {
+            throw new IllegalArgumentException("Ship does not fit on the " + rows + "x" + cols + " board: " + ship);
+        }
+    }
+
+    // A ship of the given length whose first cell is (row, col), going right or, if vertical, down.
+    public record Ship(int row, int col, int length, boolean vertical) {
+        public Ship {
+            if (length <= 0) {
+                throw new IllegalArgumentException("Ship length must be positive, but was: " + length);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.kerrrusha.codewars;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+// Validates a file of packed 10x10 boards and writes a bitmap with one bit per board, set when the board is valid.
+// A packed board takes 13 bytes: cell (i, j) is bit 10 * i + j, counting from the lowest bit of the first byte,
+// and the 4 bits left over must be zero. Bit k of the bitmap is bit k % 8 of byte k / 8. The input is memory-mapped
+// window by window and validated in chunks of whole bitmap bytes in parallel, with a bounded number of chunks in
+// flight, like ExpressionFileEvaluator does with lines.
+public class BattleFieldBulkValidator {
+    static final int BOARD_BYTES = 13;
+
+    private static final int BOARD_CELLS = BattleFieldBitboard.SIZE * BattleFieldBitboard.SIZE;
+    // the second word starts at bit 50, which is bit 10 of byte 5
+    private static final int HIGH_BYTE_OFFSET = 5;
+    private static final int HIGH_BIT_SHIFT = 10;
+    private static final long DEFAULT_WINDOW_BOARDS = 1L << 24;
+    private static final int DEFAULT_CHUNK_BOARDS = 1 << 16;
+
+    private final FleetRules rules;
+    private final Executor executor;
+    private final long windowBoards;
+    private final int chunkBoards;
+
+    public BattleFieldBulkValidator() {
+        this(FleetRules.CLASSIC);
+    }
+
+    public BattleFieldBulkValidator(FleetRules rules) {
+        this(rules, ForkJoinPool.commonPool());
+    }
+
+    public BattleFieldBulkValidator(FleetRules rules, Executor executor) {
+        this(rules, executor, DEFAULT_WINDOW_BOARDS, DEFAULT_CHUNK_BOARDS);
+    }
+
+    BattleFieldBulkValidator(FleetRules rules, Executor executor, long windowBoards, int chunkBoards) {
+        if (chunkBoards <= 0 || chunkBoards % Byte.SIZE != 0 || windowBoards % chunkBoards != 0
+                || windowBoards * BOARD_BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Window size must be a multiple of a positive chunk size that is a multiple of 8, and map under 2 GiB, but were: "
+                    + windowBoards + ", " + chunkBoards);
+        }
+        this.rules = rules;
+        this.executor = executor;
+        this.windowBoards = windowBoards;
+        this.chunkBoards = chunkBoards;
+    }
+
+    public Summary validate(Path boards, Path bitmap) {
+        long startedAt = System.nanoTime();
+        try (FileChannel in = FileChannel.open(boards, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(bitmap, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            if (size % BOARD_BYTES != 0) {
+                throw new IllegalArgumentException("File of packed boards must hold whole boards of " + BOARD_BYTES
+                        + " bytes, but has " + size + " bytes");
+            }
+            int maxChunksInFlight = 2 * Runtime.getRuntime().availableProcessors();
+            Deque<CompletableFuture<ChunkResult>> inFlight = new ArrayDeque<>();
+            long total = size / BOARD_BYTES;
+            long valid = 0;
+
+            for (long windowStart = 0; windowStart < total; windowStart += windowBoards) {
+                long boardsInWindow = Math.min(windowBoards, total - windowStart);
+                MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, windowStart * BOARD_BYTES,
+                        boardsInWindow * BOARD_BYTES);
+                for (int chunkStart = 0; chunkStart < boardsInWindow; chunkStart += chunkBoards) {
+                    int boardsInChunk = (int) Math.min(chunkBoards, boardsInWindow - chunkStart);
+                    ByteBuffer chunk = window.slice(chunkStart * BOARD_BYTES, boardsInChunk * BOARD_BYTES)
+                            .order(ByteOrder.LITTLE_ENDIAN);
+                    inFlight.add(CompletableFuture.supplyAsync(() -> validateChunk(chunk, boardsInChunk), executor));
+                    if (inFlight.size() >= maxChunksInFlight) {
+                        valid += inFlight.poll().join().writeTo(out);
+                    }
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                valid += inFlight.poll().join().writeTo(out);
+            }
+            return new Summary(total, valid, size, System.nanoTime() - startedAt);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // The 13 bytes of a board in the layout of the class comment.
+    public static byte[] pack(int[][] field) {
+        long low = BattleFieldBitboard.packLow(field);
+        long high = BattleFieldBitboard.packHigh(field);
+        byte[] packed = new byte[BOARD_BYTES];
+        for (int bit = 0; bit < BOARD_CELLS; bit++) {
+            long cell = bit < BOARD_CELLS / 2 ? low >>> bit : high >>> bit - BOARD_CELLS / 2;
+            if ((cell & 1) != 0) {
+                packed[bit / Byte.SIZE] |= (byte) (1 << bit % Byte.SIZE);
+            }
+        }
+        return packed;
+    }
+
+    private ChunkResult validateChunk(ByteBuffer chunk, int boards) {
+        byte[] bitmap = new byte[(boards + Byte.SIZE - 1) / Byte.SIZE];
+        // the bitboard checks the classic fleet only, other rules go through a BattleField one board at a time
+        BattleField validator = usesBitboard() ? null : new BattleField(rules);
+        int[][] field = validator == null ? null : new int[BattleFieldBitboard.SIZE][BattleFieldBitboard.SIZE];
+        int valid = 0;
+        for (int board = 0; board < boards; board++) {
+            int offset = board * BOARD_BYTES;
+            long low = chunk.getLong(offset) & BattleFieldBitboard.HALF_MASK;
+            long rest = chunk.getLong(offset + HIGH_BYTE_OFFSET) >>> HIGH_BIT_SHIFT;
+            long high = rest & BattleFieldBitboard.HALF_MASK;
+            if (high != rest) {
+                continue;
+            }
+            boolean boardValid;
+            if (validator == null) {
+                boardValid = BattleFieldBitboard.validate(low, high);
+            } else {
+                unpack(low, high, field);
+                boardValid = validator.validate(field);
+            }
+            if (boardValid) {
+                bitmap[board / Byte.SIZE] |= (byte) (1 << board % Byte.SIZE);
+                valid++;
+            }
+        }
+        return new ChunkResult(ByteBuffer.wrap(bitmap), valid);
+    }
+
+    // whether boards are checked packed, which the bitboard can do for the classic fleet only
+    boolean usesBitboard() {
+        return rules.equals(FleetRules.CLASSIC);
+    }
+
+    private static void unpack(long low, long high, int[][] field) {
+        int halfRows = BattleFieldBitboard.SIZE / 2;
+        for (int i = 0; i < BattleFieldBitboard.SIZE; i++) {
+            long word = i < halfRows ? low : high;
+            int rowShift = i % halfRows * BattleFieldBitboard.SIZE;
+            for (int j = 0; j < BattleFieldBitboard.SIZE; j++) {
+                field[i][j] = (int) (word >>> rowShift + j & 1);
+            }
+        }
+    }
+
+    public record Summary(long boards, long valid, long bytes, long elapsedNanos) {
+        public double boardsPerSecond() {
+            return elapsedNanos == 0 ? 0 : boards * 1e9 / elapsedNanos;
+        }
+    }
+
+    private record ChunkResult(ByteBuffer bitmap, int valid) {
+        int writeTo(FileChannel out) throws IOException {
+            while (bitmap.hasRemaining()) {
+                out.write(bitmap);
+            }
+            return valid;
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package com.kerrrusha.codewars;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+// Counts the valid boards of a fleet and samples them uniformly. Boards that are the same cells count once, however
+// the same-length ships are told apart; diagonal contact must not be allowed.
+//
+// Enumerating the boards one by one is out of reach: the classic 10x10 fleet has about 1.9e15 of them. Instead the
+// board is searched row by row, backtracking over the cells of one row at a time, and all partial boards with the
+// same frontier, that is the last row, the ships still to place and how long each vertical ship is so far, are
+// merged into one state with a count, since they complete in the same ways. Each row expands the states of the
+// previous one in parallel fork-join chunks. The board is scanned along its shorter side, the transposed board
+// having as many valid boards, and states that mirror each other left to right are merged at every row boundary,
+// as the rows below them complete in mirrored ways.
+//
+// Sampling runs the same search backwards once: every state of every row boundary learns how many ways it
+// completes to a valid board, the sum over the rows it can be followed by. A board is then drawn row by row,
+// picking each next row with probability proportional to the completions of the state it leads to.
+public class BattleFieldCounter {
+    private static final int CELL_BITS = 3;
+    private static final long CELL_MASK = (1L << CELL_BITS) - 1;
+    // frontier cell of a horizontal ship; a vertical ship's cell holds its length so far, an empty cell 0
+    private static final int HORIZONTAL = 7;
+    private static final int MAX_SHIP_LENGTH = HORIZONTAL - 1;
+    private static final int MIN_CHUNK_STATES = 1024;
+
+    private final int rows;
+    private final int cols;
+    private final FleetRules rules;
+    private final ForkJoinPool pool;
+
+    // scan geometry, transposed when the board is wider than high
+    private final int scanRows;
+    private final int scanCols;
+    private final int fleetShift;
+    // ships still to place are a mixed-radix number: digit k counts the ships of length k, with weight fleetWeights[k]
+    private final long[] fleetWeights;
+    private final int[] longestRemaining;
+    // states of every row boundary with their completions, built by the first sample
+    private Layer[] layers;
+
+    public BattleFieldCounter() {
+        this(BattleFieldBitboard.SIZE, BattleFieldBitboard.SIZE, FleetRules.CLASSIC);
+    }
+
+    public BattleFieldCounter(int rows, int cols, FleetRules rules) {
+        this(rows, cols, rules, ForkJoinPool.commonPool());
+    }
+
+    public BattleFieldCounter(int rows, int cols, FleetRules rules, ForkJoinPool pool) {
+        if (rows <= 0 || cols <= 0) {
+            throw new IllegalArgumentException("Board must have rows and columns, but had: " + rows + "x" + cols);
+        }
+        if (rules.diagonalContactAllowed()) {
+            throw new IllegalArgumentException("Counting supports fleets without diagonal contact only: " + rules);
+        }
+        if (rules.maxShipLength() > MAX_SHIP_LENGTH) {
+            throw new IllegalArgumentException("Counting supports ships of up to " + MAX_SHIP_LENGTH + " cells: " + rules);
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.rules = rules;
+        this.pool = pool;
+        this.scanRows = Math.max(rows, cols);
+        this.scanCols = Math.min(rows, cols);
+        this.fleetShift = scanCols * CELL_BITS;
+
+        int maxShipLength = rules.maxShipLength();
+        this.fleetWeights = new long[maxShipLength + 1];
+        long fleets = 1;
+        for (int length = 1; length <= maxShipLength; length++) {
+            fleetWeights[length] = fleets;
+            fleets *= rules.shipCount(length) + 1;
+            if (fleets > Integer.MAX_VALUE || fleetShift + 64 - Long.numberOfLeadingZeros(fleets) >= Long.SIZE) {
+                throw new IllegalArgumentException("Board of " + rows + "x" + cols + " with " + rules + " is too large to count");
+            }
+        }
+        this.longestRemaining = new int[(int) fleets];
+        for (int fleet = 0; fleet < fleets; fleet++) {
+            for (int length = maxShipLength; length > 0; length--) {
+                if (remaining(fleet, length) > 0) {
+                    longestRemaining[fleet] = length;
+                    break;
+                }
+            }
+        }
+    }
+
+    // Number of distinct valid boards; throws ArithmeticException if it does not fit into a long.
+    public long count() {
+        LongLongMap states = new LongLongMap();
+        states.add(initialState(), 1);
+        for (int i = 0; i < scanRows; i++) {
+            states = expand(states);
+        }
+        long[] total = new long[1];
+        states.forEach((state, count) -> {
+            if (isComplete(state)) {
+                total[0] = Math.addExact(total[0], count);
+            }
+        });
+        return total[0];
+    }
+
+    // A board drawn uniformly from the valid ones; throws IllegalStateException if there is none, see count.
+    // The first call runs the search backwards, which takes about twice as long as count, later calls are fast.
+    public int[][] sample(Random random) {
+        Layer[] layers = layers();
+        long state = initialState();
+        if (layers[0].completions(state) == 0) {
+            throw new IllegalStateException("No valid board of " + rows + "x" + cols + " with " + rules);
+        }
+        int[][] field = new int[rows][cols];
+        for (int i = 0; i < scanRows; i++) {
+            Layer next = layers[i + 1];
+            long[] pick = {random.nextLong(layers[i].completions(canonical(state))), -1};
+            expandRow(state, 0, 0, 0, 1, (successor, count) -> {
+                if (pick[1] < 0) {
+                    long completions = next.completions(canonical(successor));
+                    if (pick[0] < completions) {
+                        pick[1] = successor;
+                    }
+                    pick[0] -= completions;
+                }
+            });
+            state = pick[1];
+            for (int j = 0; j < scanCols; j++) {
+                if (cell(state, j) != 0) {
+                    field[rows < cols ? j : i][rows < cols ? i : j] = 1;
+                }
+            }
+        }
+        return field;
+    }
+
+    private LongLongMap expand(LongLongMap states) {
+        long[] keys = new long[states.size()];
+        long[] counts = new long[states.size()];
+        states.copyTo(keys, counts);
+        return pool.invoke(new RowExpansion(keys, counts, 0, keys.length, chunk(keys.length)));
+    }
+
+    private synchronized Layer[] layers() {
+        if (layers != null) {
+            return layers;
+        }
+        Layer[] built = new Layer[scanRows + 1];
+        LongLongMap states = new LongLongMap();
+        states.add(initialState(), 1);
+        for (int i = 0; i <= scanRows; i++) {
+            if (i > 0) {
+                states = expand(states);
+            }
+            long[] keys = new long[states.size()];
+            states.copyTo(keys, new long[keys.length]);
+            Arrays.sort(keys);
+            built[i] = new Layer(keys, new long[keys.length]);
+        }
+        Layer last = built[scanRows];
+        for (int k = 0; k < last.keys.length; k++) {
+            last.completions[k] = isComplete(last.keys[k]) ? 1 : 0;
+        }
+        for (int i = scanRows - 1; i >= 0; i--) {
+            Layer layer = built[i];
+            pool.invoke(new Completion(layer, built[i + 1], 0, layer.keys.length, chunk(layer.keys.length)));
+        }
+        layers = built;
+        return layers;
+    }
+
+    private int chunk(int states) {
+        return Math.max(MIN_CHUNK_STATES, states / (4 * pool.getParallelism()) + 1);
+    }
+
+    // Adds the row-boundary states that one state reaches after the next row, backtracking over the row's cells.
+    // The cell above is read from the frontier before the cell is overwritten; aboveLeft keeps it one cell longer.
+    private void expandRow(long state, int j, int run, int aboveLeft, long count, LongLongMap.Entries next) {
+        if (j == scanCols) {
+            state = closeRun(state, run, aboveLeft, j);
+            if (state >= 0) {
+                next.accept(state, count);
+            }
+            return;
+        }
+        int above = cell(state, j);
+
+        long empty = closeRun(state, run, aboveLeft, j);
+        if (empty >= 0) {
+            // a vertical ship ends above an empty cell
+            long fleet = above == HORIZONTAL ? empty >>> fleetShift : take(empty >>> fleetShift, above);
+            if (fleet >= 0) {
+                expandRow(withCell(withFleet(empty, fleet), j, 0), j + 1, 0, above, count, next);
+            }
+        }
+
+        // a taken cell must not touch the previous row but for continuing a vertical ship as a lone cell of its row
+        boolean touchesAbove = aboveLeft != 0 || above == HORIZONTAL || run > 0 && above != 0
+                || j + 1 < scanCols && cell(state, j + 1) != 0;
+        if (!touchesAbove && run < longestRemaining[(int) (state >>> fleetShift)]) {
+            expandRow(withCell(state, j, HORIZONTAL), j + 1, run + 1, above, count, next);
+        }
+    }
+
+    // Ends the run of taken cells left of column j: a run of one continues the vertical ship above it, a longer
+    // run is a horizontal ship. Returns -1 if no ship of that length is left.
+    private long closeRun(long state, int run, int aboveLeft, int j) {
+        if (run == 0) {
+            return state;
+        }
+        if (run == 1) {
+            int length = aboveLeft + 1;
+            return length > longestRemaining[(int) (state >>> fleetShift)] ? -1 : withCell(state, j - 1, length);
+        }
+        long fleet = take(state >>> fleetShift, run);
+        return fleet < 0 ? -1 : withFleet(state, fleet);
+    }
+
+    // The fleet with one ship of the length placed, -1 if none is left; length 0 is no ship.
+    private long take(long fleet, int length) {
+        if (length == 0) {
+            return fleet;
+        }
+        return remaining(fleet, length) == 0 ? -1 : fleet - fleetWeights[length];
+    }
+
+    private int remaining(long fleet, int length) {
+        return (int) (fleet / fleetWeights[length] % (rules.shipCount(length) + 1));
+    }
+
+    private long initialState() {
+        long fleet = 0;
+        for (int length = 1; length < fleetWeights.length; length++) {
+            fleet += rules.shipCount(length) * fleetWeights[length];
+        }
+        return fleet << fleetShift;
+    }
+
+    // Whether a state after the last row is a valid board: the vertical ships that reach the last row end there.
+    private boolean isComplete(long state) {
+        long fleet = state >>> fleetShift;
+        for (int j = 0; j < scanCols && fleet >= 0; j++) {
+            if (cell(state, j) != HORIZONTAL) {
+                fleet = take(fleet, cell(state, j));
+            }
+        }
+        return fleet == 0;
+    }
+
+    private long canonical(long state) {
+        long mirrored = state >>> fleetShift << fleetShift;
+        for (int j = 0; j < scanCols; j++) {
+            mirrored = withCell(mirrored, scanCols - 1 - j, cell(state, j));
+        }
+        return Math.min(state, mirrored);
+    }
+
+    private static int cell(long state, int j) {
+        return (int) (state >>> j * CELL_BITS & CELL_MASK);
+    }
+
+    private static long withCell(long state, int j, int value) {
+        return state & ~(CELL_MASK << j * CELL_BITS) | (long) value << j * CELL_BITS;
+    }
+
+    private long withFleet(long state, long fleet) {
+        return state & (1L << fleetShift) - 1 | fleet << fleetShift;
+    }
+
+    private class RowExpansion extends RecursiveTask<LongLongMap> {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] keys;
+        private final long[] counts;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        RowExpansion(long[] keys, long[] counts, int from, int to, int chunk) {
+            this.keys = keys;
+            this.counts = counts;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected LongLongMap compute() {
+            if (to - from <= chunk) {
+                LongLongMap next = new LongLongMap();
+                for (int i = from; i < to; i++) {
+                    expandRow(keys[i], 0, 0, 0, counts[i], (state, count) -> next.add(canonical(state), count));
+                }
+                return next;
+            }
+            int middle = (from + to) >>> 1;
+            RowExpansion left = new RowExpansion(keys, counts, from, middle, chunk);
+            left.fork();
+            LongLongMap right = new RowExpansion(keys, counts, middle, to, chunk).compute();
+            LongLongMap merged = left.join();
+            if (merged.size() < right.size()) {
+                LongLongMap larger = right;
+                right = merged;
+                merged = larger;
+            }
+            right.forEach(merged::add);
+            return merged;
+        }
+    }
+
+    // Completions of the states of a layer: the sum over the rows each state can be followed by of the completions
+    // of the state that row leads to in the next layer.
+    private class Completion extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Layer layer;
+        private final Layer next;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        Completion(Layer layer, Layer next, int from, int to, int chunk) {
+            this.layer = layer;
+            this.next = next;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunk) {
+                for (int k = from; k < to; k++) {
+                    long[] sum = new long[1];
+                    expandRow(layer.keys[k], 0, 0, 0, 1,
+                            (state, count) -> sum[0] = Math.addExact(sum[0], next.completions(canonical(state))));
+                    layer.completions[k] = sum[0];
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Completion(layer, next, from, middle, chunk), new Completion(layer, next, middle, to, chunk));
+        }
+    }
+
+    // The states of a row boundary, sorted, with how many ways each completes; mirrored states complete alike,
+    // so only the canonical one is kept.
+    private record Layer(long[] keys, long[] completions) {
+        long completions(long canonicalState) {
+            int k = Arrays.binarySearch(keys, canonicalState);
+            return k < 0 ? 0 : completions[k];
+        }
+    }
+
+    // Open-addressing map from non-negative long states to counts, without boxing.
+    private static class LongLongMap {
+        private static final long EMPTY = -1;
+
+        private long[] keys = newKeys(1 << 10);
+        private long[] values = new long[1 << 10];
+        private int size;
+
+        void add(long key, long value) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = slot + 1 & mask;
+            }
+            if (keys[slot] == key) {
+                values[slot] = Math.addExact(values[slot], value);
+                return;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        void forEach(Entries entries) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != EMPTY) {
+                    entries.accept(keys[slot], values[slot]);
+                }
+            }
+        }
+
+        void copyTo(long[] keys, long[] values) {
+            int[] next = new int[1];
+            forEach((key, value) -> {
+                keys[next[0]] = key;
+                values[next[0]++] = value;
+            });
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = newKeys(oldKeys.length * 2);
+            values = new long[oldKeys.length * 2];
+            size = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != EMPTY) {
+                    add(oldKeys[slot], oldValues[slot]);
+                }
+            }
+        }
+
+        private static long[] newKeys(int capacity) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+
+        private static int hash(long key) {
+            long mixed = key * 0x9E3779B97F4A7C15L;
+            return (int) (mixed ^ mixed >>> 32);
+        }
+
+        interface Entries {
+            void accept(long key, long value);
+        }
+    }
+}
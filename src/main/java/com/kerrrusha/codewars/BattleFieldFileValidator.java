@@ -0,0 +1,116 @@
+package com.kerrrusha.codewars;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// Validates a board written as text, one row per line, e.g. "1 0 0 1" or "1,0,0,1" or "1001"; blank lines are
+// skipped. Rows are handed to a BattleField as they are read, so memory use depends on the width of the board only,
+// and reading stops at the first row that makes the board invalid. Malformed text is rejected with an exception.
+public class BattleFieldFileValidator {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FleetRules rules;
+
+    public BattleFieldFileValidator() {
+        this(FleetRules.CLASSIC);
+    }
+
+    public BattleFieldFileValidator(FleetRules rules) {
+        this.rules = rules;
+    }
+
+    public Result validate(Path input) {
+        try (InputStream in = Files.newInputStream(input)) {
+            return validate(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Reads the stream until the board is known to be valid or invalid; the stream is not closed.
+    public Result validate(InputStream in) {
+        RowReader reader = new RowReader(new BattleField(rules));
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long bytes = 0;
+        try {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                bytes += read;
+                for (int i = 0; i < read; i++) {
+                    if (!reader.accept(buffer[i])) {
+                        return new Result(false, reader.rows, bytes);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Result(reader.finish(), reader.rows, bytes);
+    }
+
+    // rows and bytes read before the board was found valid or invalid
+    public record Result(boolean valid, long rows, long bytes) {
+    }
+
+    private static class RowReader {
+        private final BattleField validator;
+        private int[] row = new int[16];
+        private int cells;
+        private int cols = -1;
+        private long rows;
+        private long lines = 1;
+
+        RowReader(BattleField validator) {
+            this.validator = validator;
+        }
+
+        // Returns false once the board is invalid.
+        boolean accept(byte symbol) {
+            switch (symbol) {
+                case '0', '1' -> {
+                    if (cells == row.length) {
+                        row = Arrays.copyOf(row, 2 * cells);
+                    }
+                    row[cells++] = symbol - '0';
+                }
+                case '\n' -> {
+                    lines++;
+                    return endRow();
+                }
+                case ' ', ',', '\t', '\r' -> {
+                }
+                default -> throw new IllegalArgumentException("Unexpected value: '" + (char) symbol + "' on line " + lines);
+            }
+            return true;
+        }
+
+        boolean finish() {
+            if (!endRow()) {
+                return false;
+            }
+            if (cols < 0) {
+                validator.begin(0);
+            }
+            return validator.finish();
+        }
+
+        private boolean endRow() {
+            if (cells == 0) {
+                return true;
+            }
+            if (cols < 0) {
+                cols = cells;
+                validator.begin(cols);
+            } else if (cells != cols) {
+                throw new IllegalArgumentException("Row " + rows + " has " + cells + " cells, but the board has " + cols + " columns");
+            }
+            cells = 0;
+            rows++;
+            return validator.offer(row);
+        }
+    }
+}
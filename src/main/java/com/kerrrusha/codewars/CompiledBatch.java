@@ -0,0 +1,71 @@
+package com.kerrrusha.codewars;
+
+import java.util.List;
+import java.util.Map;
+
+// Batch of expressions produced by MathEvaluator.compileAll, stored as one graph of distinct sub-expressions in
+// which operands always come before the nodes that use them. Evaluating the batch is one pass over that graph.
+public final class CompiledBatch {
+    private final byte[] opcodes;
+    // operand nodes of an operation, or the variable slot of a variable
+    private final int[] leftOperands;
+    private final int[] rightOperands;
+    private final double[] constants;
+    private final String[] variableNames;
+    // node of every expression, -1 for the expressions that failed to compile
+    private final int[] roots;
+    private final Map<Integer, RuntimeException> failures;
+    private final int parsedNodes;
+
+    CompiledBatch(byte[] opcodes, int[] leftOperands, int[] rightOperands, double[] constants, String[] variableNames,
+                  int[] roots, Map<Integer, RuntimeException> failures, int parsedNodes) {
+        this.opcodes = opcodes;
+        this.leftOperands = leftOperands;
+        this.rightOperands = rightOperands;
+        this.constants = constants;
+        this.variableNames = variableNames;
+        this.roots = roots;
+        this.failures = failures;
+        this.parsedNodes = parsedNodes;
+    }
+
+    public int size() {
+        return roots.length;
+    }
+
+    // Distinct nodes (operands and operations) the batch evaluates.
+    public int nodes() {
+        return opcodes.length;
+    }
+
+    // Nodes of the compiled expressions that were shared with an equal sub-expression instead of added.
+    public int deduplicatedNodes() {
+        return parsedNodes - opcodes.length;
+    }
+
+    // Variable names of the whole batch in order of first appearance; values are passed to evaluate in the same order.
+    public List<String> variables() {
+        return List.of(variableNames);
+    }
+
+    // Expressions that failed to compile get NaN and their exception, just like in MathEvaluator.calculateAll.
+    public MathEvaluator.BatchResult evaluate(double... values) {
+        if (values.length < variableNames.length) {
+            throw new IllegalArgumentException("Expression has unbound variable: " + variableNames[values.length]);
+        }
+        double[] nodeValues = new double[opcodes.length];
+        for (int i = 0; i < opcodes.length; i++) {
+            nodeValues[i] = switch (opcodes[i]) {
+                case CompiledExpression.CONSTANT -> constants[i];
+                case CompiledExpression.VARIABLE -> values[leftOperands[i]];
+                case CompiledExpression.NEGATE -> -nodeValues[leftOperands[i]];
+                default -> CompiledExpression.apply(opcodes[i], nodeValues[leftOperands[i]], nodeValues[rightOperands[i]]);
+            };
+        }
+        double[] results = new double[roots.length];
+        for (int i = 0; i < roots.length; i++) {
+            results[i] = roots[i] < 0 ? Double.NaN : nodeValues[roots[i]];
+        }
+        return new MathEvaluator.BatchResult(results, failures);
+    }
+}
@@ -0,0 +1,416 @@
+package com.kerrrusha.codewars;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+// Immutable postfix program produced by MathEvaluator.compile. Evaluating it does no parsing and, once the
+// calling thread's scratch stacks have grown to fit, no allocation either.
+public final class CompiledExpression {
+    static final byte CONSTANT = 0;
+    static final byte ADD = 1;
+    static final byte SUBTRACT = 2;
+    static final byte MULTIPLY = 3;
+    static final byte DIVIDE = 4;
+    static final byte NEGATE = 5;
+    static final byte VARIABLE = 6;
+    // marks a constant the optimizer dropped from the middle of the program; never present in a finished program
+    private static final byte REMOVED_CONSTANT = -1;
+    private static final long NEGATIVE_ZERO_BITS = Double.doubleToRawLongBits(-0.0);
+
+    // rows evaluated per pass in column mode; a stack of blocks this size stays in the L1/L2 cache
+    private static final int BLOCK_SIZE = 1024;
+    // per-thread scratch stacks are kept for reuse only up to this size, so one deeply nested expression does not
+    // pin its stack memory to the thread for good
+    static final int MAX_RETAINED_STACK_SIZE = 1 << 16;
+    private static final double[] NO_VALUES = {};
+
+    private static final ThreadLocal<double[]> OPERAND_STACK = ThreadLocal.withInitial(() -> new double[16]);
+    private static final ThreadLocal<double[][]> BLOCK_STACK = ThreadLocal.withInitial(() -> new double[0][]);
+
+    private final byte[] code;
+    private final double[] constants;
+    private final int[] variableSlots;
+    private final String[] variableNames;
+    private final int maxStackDepth;
+    private final int eliminatedNodes;
+
+    CompiledExpression(byte[] code, double[] constants, int[] variableSlots, String[] variableNames, int maxStackDepth) {
+        this(code, constants, variableSlots, variableNames, maxStackDepth, 0);
+    }
+
+    private CompiledExpression(byte[] code, double[] constants, int[] variableSlots, String[] variableNames,
+                               int maxStackDepth, int eliminatedNodes) {
+        this.code = code;
+        this.constants = constants;
+        this.variableSlots = variableSlots;
+        this.variableNames = variableNames;
+        this.maxStackDepth = maxStackDepth;
+        this.eliminatedNodes = eliminatedNodes;
+    }
+
+    // Number of nodes (operands and operations) the optimizer removed from the parsed expression.
+    public int eliminatedNodes() {
+        return eliminatedNodes;
+    }
+
+    public int nodes() {
+        return code.length;
+    }
+
+    // Variable names in order of first appearance; values are passed to evaluate in the same order.
+    public List<String> variables() {
+        return List.of(variableNames);
+    }
+
+    public double evaluate() {
+        return evaluate(NO_VALUES);
+    }
+
+    public double evaluate(double... values) {
+        requireValues(values.length);
+        double[] stack = operandStack();
+        int stackSize = 0;
+        int constantIndex = 0;
+        int variableIndex = 0;
+        for (byte opcode : code) {
+            switch (opcode) {
+                case CONSTANT -> stack[stackSize++] = constants[constantIndex++];
+                case VARIABLE -> stack[stackSize++] = values[variableSlots[variableIndex++]];
+                case NEGATE -> stack[stackSize - 1] = -stack[stackSize - 1];
+                default -> {
+                    double rightOperand = stack[--stackSize];
+                    stack[stackSize - 1] = apply(opcode, stack[stackSize - 1], rightOperand);
+                }
+            }
+        }
+        return stack[0];
+    }
+
+    // Evaluates the expression for every row: output[row] = f(columns[0][row], columns[1][row], ...), with
+    // columns in the order of variables(). Rows are processed in blocks and every operation is applied as a
+    // tight loop over the whole block, which the JIT compiles to SIMD instructions.
+    public void evaluate(double[][] columns, double[] output) {
+        requireValues(columns.length);
+        for (int i = 0; i < variableNames.length; i++) {
+            if (columns[i].length < output.length) {
+                throw new IllegalArgumentException("Column of variable " + variableNames[i] + " has " + columns[i].length
+                        + " rows, but output has " + output.length);
+            }
+        }
+        if (maxStackDepth > MAX_RETAINED_STACK_SIZE / BLOCK_SIZE) {
+            // a stack of whole blocks would take maxStackDepth * BLOCK_SIZE doubles, so go row by row instead
+            evaluateRows(columns, output);
+            return;
+        }
+        double[][] stack = blockStack();
+        for (int from = 0; from < output.length; from += BLOCK_SIZE) {
+            int rows = Math.min(BLOCK_SIZE, output.length - from);
+            evaluateBlock(columns, stack, from, rows);
+            System.arraycopy(stack[0], 0, output, from, rows);
+        }
+    }
+
+    public void evaluate(Map<String, double[]> columns, double[] output) {
+        double[][] orderedColumns = new double[variableNames.length][];
+        for (int i = 0; i < variableNames.length; i++) {
+            orderedColumns[i] = columns.get(variableNames[i]);
+            if (orderedColumns[i] == null) {
+                throw new IllegalArgumentException("No column for variable: " + variableNames[i]);
+            }
+        }
+        evaluate(orderedColumns, output);
+    }
+
+    private void evaluateRows(double[][] columns, double[] output) {
+        double[] values = new double[variableNames.length];
+        for (int row = 0; row < output.length; row++) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = columns[i][row];
+            }
+            output[row] = evaluate(values);
+        }
+    }
+
+    private void evaluateBlock(double[][] columns, double[][] stack, int from, int rows) {
+        int stackSize = 0;
+        int constantIndex = 0;
+        int variableIndex = 0;
+        for (byte opcode : code) {
+            switch (opcode) {
+                case CONSTANT -> Arrays.fill(stack[stackSize++], 0, rows, constants[constantIndex++]);
+                case VARIABLE -> System.arraycopy(columns[variableSlots[variableIndex++]], from, stack[stackSize++], 0, rows);
+                case NEGATE -> negate(stack[stackSize - 1], rows);
+                default -> {
+                    stackSize--;
+                    apply(opcode, stack[stackSize - 1], stack[stackSize], rows);
+                }
+            }
+        }
+    }
+
+    private static void negate(double[] operand, int rows) {
+        for (int i = 0; i < rows; i++) {
+            operand[i] = -operand[i];
+        }
+    }
+
+    // One loop per operation rather than a switch per row keeps every loop body a single vectorizable instruction.
+    private static void apply(byte opcode, double[] leftOperand, double[] rightOperand, int rows) {
+        switch (opcode) {
+            case ADD -> {
+                for (int i = 0; i < rows; i++) {
+                    leftOperand[i] += rightOperand[i];
+                }
+            }
+            case SUBTRACT -> {
+                for (int i = 0; i < rows; i++) {
+                    leftOperand[i] -= rightOperand[i];
+                }
+            }
+            case MULTIPLY -> {
+                for (int i = 0; i < rows; i++) {
+                    leftOperand[i] *= rightOperand[i];
+                }
+            }
+            case DIVIDE -> {
+                for (int i = 0; i < rows; i++) {
+                    leftOperand[i] /= rightOperand[i];
+                }
+            }
+            default -> throw new IllegalStateException("Unexpected value: " + opcode);
+        }
+    }
+
+    // Compiles the formula to JVM bytecode in a hidden class, which the JIT then inlines as straight-line arithmetic.
+    // Expressions too large for that fall back to this interpreter. Values are passed in the order of variables().
+    public ToDoubleFunction<double[]> specialize() {
+        ToDoubleFunction<double[]> specialized = ExpressionBytecodeCompiler.compile(code, constants, variableSlots, maxStackDepth);
+        return specialized != null ? specialized : this::evaluate;
+    }
+
+    // Folds sub-expressions made only of literals, cancels double negations, rewrites a - -b as a + b and
+    // a + -b as a - b, and drops the identity operations *1, 1*, /1, +0, 0+ and -0. Folding runs the same double
+    // operations the interpreter would, so results are unchanged, except that x + 0 with x = -0.0 gives -0.0.
+    // Works in one pass over the postfix program: every operand is a contiguous run at the end of the output, so
+    // replacing a sub-tree is a truncation, and a left operand dropped from the middle is only marked as removed.
+    CompiledExpression optimize() {
+        Optimization optimization = new Optimization();
+        int constantIndex = 0;
+        int variableIndex = 0;
+        for (byte opcode : code) {
+            switch (opcode) {
+                case CONSTANT -> optimization.constant(constants[constantIndex++]);
+                case VARIABLE -> optimization.variable(variableSlots[variableIndex++]);
+                case NEGATE -> optimization.negate();
+                default -> optimization.binary(opcode);
+            }
+        }
+        return optimization.toCompiledExpression();
+    }
+
+    private class Optimization {
+        private final byte[] code = new byte[CompiledExpression.this.code.length];
+        private final double[] constants = new double[CompiledExpression.this.constants.length];
+        private final int[] variableSlots = new int[CompiledExpression.this.variableSlots.length];
+        private int codeSize;
+        private int constantsSize;
+        private int variableSlotsSize;
+
+        // operand stack of the program being built: where each operand starts, and its value if it is a literal
+        private final int[] operandCodeStart = new int[maxStackDepth];
+        private final int[] operandConstantsStart = new int[maxStackDepth];
+        private final int[] operandVariablesStart = new int[maxStackDepth];
+        private final boolean[] operandIsConstant = new boolean[maxStackDepth];
+        private final double[] operandValue = new double[maxStackDepth];
+        private int operandsSize;
+
+        void constant(double value) {
+            pushOperand(true, value);
+            constants[constantsSize++] = value;
+            code[codeSize++] = CONSTANT;
+        }
+
+        void variable(int slot) {
+            pushOperand(false, 0);
+            variableSlots[variableSlotsSize++] = slot;
+            code[codeSize++] = VARIABLE;
+        }
+
+        void negate() {
+            int operand = operandsSize - 1;
+            if (operandIsConstant[operand]) {
+                replaceWithConstant(operand, -operandValue[operand]);
+            } else if (code[codeSize - 1] == NEGATE) {
+                codeSize--;
+            } else {
+                code[codeSize++] = NEGATE;
+            }
+        }
+
+        void binary(byte opcode) {
+            int right = --operandsSize;
+            int left = operandsSize - 1;
+            if (operandIsConstant[left] && operandIsConstant[right]) {
+                replaceWithConstant(left, apply(opcode, operandValue[left], operandValue[right]));
+                return;
+            }
+            if (operandIsConstant[right] && isRightIdentity(opcode, operandValue[right])) {
+                truncateTo(right);
+                return;
+            }
+            if (operandIsConstant[left] && isLeftIdentity(opcode, operandValue[left])) {
+                code[operandCodeStart[left]] = REMOVED_CONSTANT;
+                operandCodeStart[left] = operandCodeStart[right];
+                operandConstantsStart[left] = operandConstantsStart[right];
+                operandVariablesStart[left] = operandVariablesStart[right];
+                operandIsConstant[left] = false;
+                return;
+            }
+            if ((opcode == ADD || opcode == SUBTRACT) && code[codeSize - 1] == NEGATE) {
+                codeSize--;
+                opcode = opcode == ADD ? SUBTRACT : ADD;
+            }
+            code[codeSize++] = opcode;
+            operandIsConstant[left] = false;
+        }
+
+        // x + 0.0 is 0.0 rather than x for x = -0.0, so only adding -0.0 and subtracting 0.0 leave every x as it is
+        private boolean isRightIdentity(byte opcode, double value) {
+            return switch (opcode) {
+                case ADD -> Double.doubleToRawLongBits(value) == NEGATIVE_ZERO_BITS;
+                case SUBTRACT -> Double.doubleToRawLongBits(value) == 0;
+                case MULTIPLY, DIVIDE -> value == 1;
+                default -> false;
+            };
+        }
+
+        private boolean isLeftIdentity(byte opcode, double value) {
+            return switch (opcode) {
+                case ADD -> Double.doubleToRawLongBits(value) == NEGATIVE_ZERO_BITS;
+                case MULTIPLY -> value == 1;
+                default -> false;
+            };
+        }
+
+        private void pushOperand(boolean isConstant, double value) {
+            operandCodeStart[operandsSize] = codeSize;
+            operandConstantsStart[operandsSize] = constantsSize;
+            operandVariablesStart[operandsSize] = variableSlotsSize;
+            operandIsConstant[operandsSize] = isConstant;
+            operandValue[operandsSize] = value;
+            operandsSize++;
+        }
+
+        private void replaceWithConstant(int operand, double value) {
+            truncateTo(operand);
+            constant(value);
+        }
+
+        // Drops the given operand and everything above it from both the operand stack and the program.
+        private void truncateTo(int operand) {
+            codeSize = operandCodeStart[operand];
+            constantsSize = operandConstantsStart[operand];
+            variableSlotsSize = operandVariablesStart[operand];
+            operandsSize = operand;
+        }
+
+        CompiledExpression toCompiledExpression() {
+            byte[] finishedCode = new byte[codeSize];
+            double[] finishedConstants = new double[constantsSize];
+            int finishedCodeSize = 0;
+            int finishedConstantsSize = 0;
+            int constantIndex = 0;
+            int stackDepth = 0;
+            int finishedMaxStackDepth = 0;
+            for (int i = 0; i < codeSize; i++) {
+                byte opcode = code[i];
+                if (opcode == REMOVED_CONSTANT) {
+                    constantIndex++;
+                    continue;
+                }
+                if (opcode == CONSTANT) {
+                    finishedConstants[finishedConstantsSize++] = constants[constantIndex++];
+                }
+                if (opcode == CONSTANT || opcode == VARIABLE) {
+                    finishedMaxStackDepth = Math.max(finishedMaxStackDepth, ++stackDepth);
+                } else if (opcode != NEGATE) {
+                    stackDepth--;
+                }
+                finishedCode[finishedCodeSize++] = opcode;
+            }
+            return new CompiledExpression(
+                    Arrays.copyOf(finishedCode, finishedCodeSize),
+                    Arrays.copyOf(finishedConstants, finishedConstantsSize),
+                    Arrays.copyOf(variableSlots, variableSlotsSize),
+                    variableNames,
+                    finishedMaxStackDepth,
+                    CompiledExpression.this.code.length - finishedCodeSize);
+        }
+    }
+
+    private void requireValues(int valuesCount) {
+        if (valuesCount < variableNames.length) {
+            throw new IllegalArgumentException("Expression has unbound variable: " + variableNames[valuesCount]);
+        }
+    }
+
+    private double[] operandStack() {
+        if (maxStackDepth > MAX_RETAINED_STACK_SIZE) {
+            return new double[maxStackDepth];
+        }
+        double[] stack = OPERAND_STACK.get();
+        if (stack.length < maxStackDepth) {
+            stack = new double[Math.max(maxStackDepth, stack.length * 2)];
+            OPERAND_STACK.set(stack);
+        }
+        return stack;
+    }
+
+    private double[][] blockStack() {
+        double[][] stack = BLOCK_STACK.get();
+        if (stack.length < maxStackDepth) {
+            double[][] grown = Arrays.copyOf(stack, Math.max(maxStackDepth, stack.length * 2));
+            for (int i = stack.length; i < grown.length; i++) {
+                grown[i] = new double[BLOCK_SIZE];
+            }
+            stack = grown;
+            BLOCK_STACK.set(stack);
+        }
+        return stack;
+    }
+
+    static double apply(byte opcode, double leftOperand, double rightOperand) {
+        return switch (opcode) {
+            case ADD -> leftOperand + rightOperand;
+            case SUBTRACT -> leftOperand - rightOperand;
+            case MULTIPLY -> leftOperand * rightOperand;
+            case DIVIDE -> leftOperand / rightOperand;
+            default -> throw new IllegalStateException("Unexpected value: " + opcode);
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        int constantIndex = 0;
+        int variableIndex = 0;
+        for (byte opcode : code) {
+            if (!result.isEmpty()) {
+                result.append(' ');
+            }
+            switch (opcode) {
+                case CONSTANT -> result.append(constants[constantIndex++]);
+                case VARIABLE -> result.append(variableNames[variableSlots[variableIndex++]]);
+                case ADD -> result.append('+');
+                case SUBTRACT -> result.append('-');
+                case MULTIPLY -> result.append('*');
+                case DIVIDE -> result.append('/');
+                case NEGATE -> result.append("neg");
+                default -> throw new IllegalStateException("Unexpected value: " + opcode);
+            }
+        }
+        return result.toString();
+    }
+}
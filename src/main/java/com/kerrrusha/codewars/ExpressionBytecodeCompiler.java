@@ -0,0 +1,250 @@
+package com.kerrrusha.codewars;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+// Turns a postfix program into a hidden class whose applyAsDouble(double[] values) is the formula written out as
+// straight-line arithmetic bytecode, so the JIT compiles it like hand-written Java: no dispatch loop, no operand
+// stack array, constants inlined. The program is already validated by the parser, so no verification of our own
+// is needed; the JVM verifier still checks the generated class.
+final class ExpressionBytecodeCompiler {
+    // HotSpot does not JIT-compile methods longer than 8000 bytes of bytecode (unless -XX:-DontCompileHugeMethods
+    // is set), and a method that only ever runs interpreted is slower than the postfix interpreter.
+    static final int MAX_CODE_LENGTH = 8000;
+
+    private static final int CLASS_FILE_VERSION = 61;
+    private static final int MAX_CONSTANT_POOL_SIZE = 65535;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final byte CONSTANT_UTF8 = 1;
+    private static final byte CONSTANT_DOUBLE = 6;
+    private static final byte CONSTANT_CLASS = 7;
+    private static final byte CONSTANT_METHODREF = 10;
+    private static final byte CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC2_W = 0x14;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int DALOAD = 0x31;
+    private static final int ASTORE_1 = 0x4c;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DDIV = 0x6f;
+    private static final int DNEG = 0x77;
+    private static final int DRETURN = 0xaf;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int CHECKCAST = 0xc0;
+
+    private static final String CLASS_NAME = CompiledExpression.class.getName().replace('.', '/') + "$Specialized";
+
+    private ExpressionBytecodeCompiler() {
+    }
+
+    // Returns null when the formula is too large to be worth compiling; callers then keep the interpreter.
+    static ToDoubleFunction<double[]> compile(byte[] code, double[] constants, int[] variableSlots, int maxStackDepth) {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(CLASS_NAME);
+        int objectClass = pool.classRef("java/lang/Object");
+        int interfaceClass = pool.classRef("java/util/function/ToDoubleFunction");
+        int objectConstructor = pool.methodRef(objectClass, "<init>", "()V");
+        int doubleArrayClass = pool.classRef("[D");
+        int codeAttribute = pool.utf8("Code");
+        int constructorName = pool.utf8("<init>");
+        int constructorType = pool.utf8("()V");
+        int methodName = pool.utf8("applyAsDouble");
+        int methodType = pool.utf8("(Ljava/lang/Object;)D");
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(ALOAD_1);
+        writeIndex(body, CHECKCAST, doubleArrayClass);
+        body.write(ASTORE_1);
+        int constantIndex = 0;
+        int variableIndex = 0;
+        for (byte opcode : code) {
+            switch (opcode) {
+                case CompiledExpression.CONSTANT -> {
+                    int index = pool.doubleConstant(constants[constantIndex++]);
+                    if (index < 0) {
+                        return null;
+                    }
+                    writeIndex(body, LDC2_W, index);
+                }
+                case CompiledExpression.VARIABLE -> {
+                    if (variableSlots[variableIndex] > Short.MAX_VALUE) {
+                        return null;
+                    }
+                    body.write(ALOAD_1);
+                    writeInt(body, variableSlots[variableIndex++]);
+                    body.write(DALOAD);
+                }
+                case CompiledExpression.ADD -> body.write(DADD);
+                case CompiledExpression.SUBTRACT -> body.write(DSUB);
+                case CompiledExpression.MULTIPLY -> body.write(DMUL);
+                case CompiledExpression.DIVIDE -> body.write(DDIV);
+                case CompiledExpression.NEGATE -> body.write(DNEG);
+                default -> throw new IllegalStateException("Unexpected value: " + opcode);
+            }
+            if (body.size() > MAX_CODE_LENGTH) {
+                return null;
+            }
+        }
+        body.write(DRETURN);
+
+        try {
+            ByteArrayOutputStream classFile = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(classFile);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_FILE_VERSION);
+            pool.writeTo(out);
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(objectClass);
+            out.writeShort(1);
+            out.writeShort(interfaceClass);
+            out.writeShort(0);
+            out.writeShort(2);
+
+            byte[] constructorCode = {ALOAD_0, (byte) INVOKESPECIAL, (byte) (objectConstructor >> 8), (byte) objectConstructor, (byte) RETURN};
+            writeMethod(out, constructorName, constructorType, codeAttribute, 1, 1, constructorCode);
+            // every double takes two stack slots; loading a variable briefly needs the array and the index on top
+            writeMethod(out, methodName, methodType, codeAttribute, 2 * maxStackDepth + 2, 2, body.toByteArray());
+            out.writeShort(0);
+
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile.toByteArray(), true);
+            @SuppressWarnings("unchecked")
+            ToDoubleFunction<double[]> function = (ToDoubleFunction<double[]>) lookup
+                    .findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+                    .invoke();
+            return function;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot define compiled expression class", e);
+        }
+    }
+
+    private static void writeMethod(DataOutputStream out, int name, int type, int codeAttribute,
+                                    int maxStack, int maxLocals, byte[] code) throws IOException {
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(name);
+        out.writeShort(type);
+        out.writeShort(1);
+        out.writeShort(codeAttribute);
+        out.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    private static void writeIndex(ByteArrayOutputStream body, int instruction, int index) {
+        body.write(instruction);
+        body.write(index >> 8);
+        body.write(index);
+    }
+
+    private static void writeInt(ByteArrayOutputStream body, int value) {
+        if (value <= 5) {
+            body.write(ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            body.write(BIPUSH);
+            body.write(value);
+        } else {
+            writeIndex(body, SIPUSH, value);
+        }
+    }
+
+    private static class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<Object, Integer> indexes = new HashMap<>();
+        private int size = 1;
+
+        int utf8(String value) {
+            return indexes.computeIfAbsent(value, key -> add(1, () -> {
+                out.writeByte(CONSTANT_UTF8);
+                out.writeUTF(value);
+            }));
+        }
+
+        int classRef(String name) {
+            int nameIndex = utf8(name);
+            return indexes.computeIfAbsent("class " + name, key -> add(1, () -> {
+                out.writeByte(CONSTANT_CLASS);
+                out.writeShort(nameIndex);
+            }));
+        }
+
+        int methodRef(int owner, String name, String type) {
+            int nameIndex = utf8(name);
+            int typeIndex = utf8(type);
+            int nameAndType = add(1, () -> {
+                out.writeByte(CONSTANT_NAME_AND_TYPE);
+                out.writeShort(nameIndex);
+                out.writeShort(typeIndex);
+            });
+            return add(1, () -> {
+                out.writeByte(CONSTANT_METHODREF);
+                out.writeShort(owner);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        // Returns -1 once the pool is full.
+        int doubleConstant(double value) {
+            Long key = Double.doubleToRawLongBits(value);
+            Integer index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            if (size + 2 > MAX_CONSTANT_POOL_SIZE) {
+                return -1;
+            }
+            index = add(2, () -> {
+                out.writeByte(CONSTANT_DOUBLE);
+                out.writeDouble(value);
+            });
+            indexes.put(key, index);
+            return index;
+        }
+
+        // doubles occupy two constant pool entries
+        private int add(int entries, Entry entry) {
+            try {
+                entry.write();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            int index = size;
+            size += entries;
+            return index;
+        }
+
+        void writeTo(DataOutputStream classFile) throws IOException {
+            classFile.writeShort(size);
+            classFile.write(bytes.toByteArray());
+        }
+
+        private interface Entry {
+            void write() throws IOException;
+        }
+    }
+}
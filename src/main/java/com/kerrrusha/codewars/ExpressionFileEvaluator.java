@@ -0,0 +1,161 @@
+package com.kerrrusha.codewars;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+// Evaluates a file with one expression per line and writes one result per line, in the same order. The input is
+// memory-mapped window by window and split on line boundaries into chunks that are evaluated in parallel straight
+// from the mapped bytes; only a bounded number of chunks is in flight, so memory use does not depend on file size.
+public class ExpressionFileEvaluator {
+    private static final byte LINE_SEPARATOR = '\n';
+    private static final String FAILURE_PREFIX = "ERROR ";
+    private static final long DEFAULT_WINDOW_SIZE = 256L * 1024 * 1024;
+    private static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private final MathEvaluator evaluator;
+    private final Executor executor;
+    private final long windowSize;
+    private final int chunkSize;
+
+    public ExpressionFileEvaluator(MathEvaluator evaluator) {
+        this(evaluator, ForkJoinPool.commonPool());
+    }
+
+    public ExpressionFileEvaluator(MathEvaluator evaluator, Executor executor) {
+        this(evaluator, executor, DEFAULT_WINDOW_SIZE, DEFAULT_CHUNK_SIZE);
+    }
+
+    ExpressionFileEvaluator(MathEvaluator evaluator, Executor executor, long windowSize, int chunkSize) {
+        if (chunkSize <= 0 || windowSize < chunkSize) {
+            throw new IllegalArgumentException("Window size must not be less than a positive chunk size, but were: "
+                    + windowSize + ", " + chunkSize);
+        }
+        this.evaluator = evaluator;
+        this.executor = executor;
+        this.windowSize = windowSize;
+        this.chunkSize = chunkSize;
+    }
+
+    // Every input line produces exactly one output line: either the value or "ERROR <message>".
+    public Summary evaluate(Path input, Path output) {
+        long startedAt = System.nanoTime();
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            int maxChunksInFlight = 2 * Runtime.getRuntime().availableProcessors();
+            Deque<CompletableFuture<ChunkResult>> inFlight = new ArrayDeque<>();
+            long lines = 0;
+            long failures = 0;
+
+            long size = in.size();
+            long windowStart = 0;
+            while (windowStart < size) {
+                long windowLength = Math.min(windowSize, size - windowStart);
+                MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength);
+                boolean lastWindow = windowStart + windowLength == size;
+
+                int chunkStart = 0;
+                while (chunkStart < windowLength) {
+                    int chunkEnd = chunkEnd(window, chunkStart, lastWindow);
+                    if (chunkEnd == chunkStart) {
+                        break;
+                    }
+                    ByteBuffer chunk = window.slice(chunkStart, chunkEnd - chunkStart);
+                    inFlight.add(CompletableFuture.supplyAsync(() -> evaluateChunk(chunk), executor));
+                    if (inFlight.size() >= maxChunksInFlight) {
+                        ChunkResult result = inFlight.poll().join();
+                        result.writeTo(out);
+                        lines += result.lines();
+                        failures += result.failures();
+                    }
+                    chunkStart = chunkEnd;
+                }
+                if (chunkStart == 0) {
+                    throw new IllegalStateException("Line at offset " + windowStart + " is longer than the mapping window of "
+                            + windowSize + " bytes");
+                }
+                windowStart += chunkStart;
+            }
+            while (!inFlight.isEmpty()) {
+                ChunkResult result = inFlight.poll().join();
+                result.writeTo(out);
+                lines += result.lines();
+                failures += result.failures();
+            }
+            return new Summary(lines, failures, size, System.nanoTime() - startedAt);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // A chunk ends right after the last line separator within chunkSize bytes. A chunk that holds no separator
+    // grows to the next one; only the tail of the last window may end without a separator.
+    private int chunkEnd(ByteBuffer window, int chunkStart, boolean lastWindow) {
+        int limit = window.limit();
+        int candidate = Math.min(limit, chunkStart + chunkSize);
+        if (candidate == limit && lastWindow) {
+            return limit;
+        }
+        for (int i = candidate - 1; i >= chunkStart; i--) {
+            if (window.get(i) == LINE_SEPARATOR) {
+                return i + 1;
+            }
+        }
+        for (int i = candidate; i < limit; i++) {
+            if (window.get(i) == LINE_SEPARATOR) {
+                return i + 1;
+            }
+        }
+        return lastWindow ? limit : chunkStart;
+    }
+
+    private ChunkResult evaluateChunk(ByteBuffer chunk) {
+        StringBuilder results = new StringBuilder(chunk.limit() / 2);
+        int lines = 0;
+        int failures = 0;
+        int lineStart = 0;
+        while (lineStart < chunk.limit()) {
+            int lineEnd = lineStart;
+            while (lineEnd < chunk.limit() && chunk.get(lineEnd) != LINE_SEPARATOR) {
+                lineEnd++;
+            }
+            chunk.limit(lineEnd).position(lineStart);
+            try {
+                results.append(evaluator.calculate(chunk));
+            } catch (RuntimeException e) {
+                results.append(FAILURE_PREFIX).append(e.getMessage());
+                failures++;
+            }
+            results.append((char) LINE_SEPARATOR);
+            lines++;
+            chunk.limit(chunk.capacity());
+            lineStart = lineEnd + 1;
+        }
+        return new ChunkResult(ByteBuffer.wrap(results.toString().getBytes(StandardCharsets.US_ASCII)), lines, failures);
+    }
+
+    public record Summary(long lines, long failures, long bytes, long elapsedNanos) {
+        public double linesPerSecond() {
+            return elapsedNanos == 0 ? 0 : lines * 1e9 / elapsedNanos;
+        }
+    }
+
+    private record ChunkResult(ByteBuffer output, int lines, int failures) {
+        void writeTo(FileChannel out) throws IOException {
+            while (output.hasRemaining()) {
+                out.write(output);
+            }
+        }
+    }
+}
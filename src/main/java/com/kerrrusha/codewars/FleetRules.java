@@ -0,0 +1,86 @@
+package com.kerrrusha.codewars;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+// The fleet a BattleField board must hold: how many ships of each length, and whether ships may touch each other
+// at their corners. Ships never touch along an edge, since two ships in a line could not be told apart.
+public final class FleetRules {
+    public static final FleetRules CLASSIC = new FleetRules(Map.of(
+            4, BattleField.REQUIRED_BATTLESHIPS,
+            3, BattleField.REQUIRED_CRUISERS,
+            2, BattleField.REQUIRED_DESTROYERS,
+            1, BattleField.REQUIRED_SUBMARINES), false);
+
+    static final int MAX_SHIP_LENGTH = 1 << 16;
+
+    // index is the ship length, index 0 is unused
+    private final int[] shipCounts;
+    private final boolean diagonalContactAllowed;
+
+    public FleetRules(Map<Integer, Integer> shipCounts, boolean diagonalContactAllowed) {
+        int maxShipLength = 0;
+        for (Map.Entry<Integer, Integer> ships : shipCounts.entrySet()) {
+            if (ships.getKey() < 1 || ships.getKey() > MAX_SHIP_LENGTH) {
+                throw new IllegalArgumentException("Ship length must be in [1, " + MAX_SHIP_LENGTH + "], but was: " + ships.getKey());
+            }
+            if (ships.getValue() < 0) {
+                throw new IllegalArgumentException("Count of ships of length " + ships.getKey() + " is negative: " + ships.getValue());
+            }
+            if (ships.getValue() > 0) {
+                maxShipLength = Math.max(maxShipLength, ships.getKey());
+            }
+        }
+        this.shipCounts = new int[maxShipLength + 1];
+        for (Map.Entry<Integer, Integer> ships : shipCounts.entrySet()) {
+            if (ships.getKey() <= maxShipLength) {
+                this.shipCounts[ships.getKey()] = ships.getValue();
+            }
+        }
+        this.diagonalContactAllowed = diagonalContactAllowed;
+    }
+
+    public int shipCount(int length) {
+        return length > 0 && length < shipCounts.length ? shipCounts[length] : 0;
+    }
+
+    public int maxShipLength() {
+        return shipCounts.length - 1;
+    }
+
+    public boolean diagonalContactAllowed() {
+        return diagonalContactAllowed;
+    }
+
+    public Map<Integer, Integer> shipCounts() {
+        Map<Integer, Integer> counts = new TreeMap<>();
+        for (int length = 1; length < shipCounts.length; length++) {
+            if (shipCounts[length] > 0) {
+                counts.put(length, shipCounts[length]);
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        FleetRules rules = (FleetRules) o;
+
+        if (diagonalContactAllowed != rules.diagonalContactAllowed) return false;
+        return Arrays.equals(shipCounts, rules.shipCounts);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(shipCounts) + (diagonalContactAllowed ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "FleetRules" + shipCounts() + (diagonalContactAllowed ? ", diagonal contact allowed" : "");
+    }
+}
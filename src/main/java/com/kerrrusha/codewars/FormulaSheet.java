@@ -0,0 +1,235 @@
+package com.kerrrusha.codewars;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+// Named formulas that refer to each other like cells of a spreadsheet, e.g. "total = price * (1 + tax)".
+// Each formula is compiled once. Changing a formula or an input re-evaluates only the formulas downstream of it,
+// wave by wave in topological order; the formulas of one wave do not depend on each other, so large waves are
+// evaluated in parallel. Definitions that would create a cycle are rejected.
+public class FormulaSheet {
+    private static final char DEFINITION_SYMBOL = '=';
+    private static final int MIN_PARALLEL_WAVE_SIZE = 256;
+    private static final int WAVE_CHUNK_SIZE = 64;
+
+    private final Map<String, Cell> cells = new HashMap<>();
+    private final Executor executor;
+    private int lastRecalculated;
+
+    public FormulaSheet() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public FormulaSheet(Executor executor) {
+        this.executor = executor;
+    }
+
+    // Accepts "name = expression".
+    public synchronized void define(String definition) {
+        int definitionIndex = definition.indexOf(DEFINITION_SYMBOL);
+        if (definitionIndex < 0) {
+            throw new IllegalArgumentException("Definition must look like 'name = expression', but was: " + definition);
+        }
+        define(definition.substring(0, definitionIndex).trim(), definition.substring(definitionIndex + 1));
+    }
+
+    public synchronized void define(String name, String expression) {
+        requireName(name);
+        CompiledExpression compiled = MathEvaluator.compile(expression);
+        // cells new to the sheet are added only once the definition is accepted
+        List<Cell> added = new ArrayList<>();
+        Cell cell = cellOrAdded(name, added);
+        Cell[] inputs = new Cell[compiled.variables().size()];
+        for (int i = 0; i < inputs.length; i++) {
+            String input = compiled.variables().get(i);
+            inputs[i] = input.equals(name) ? cell : cellOrAdded(input, added);
+        }
+        requireNoCycle(cell, inputs);
+
+        for (Cell addedCell : added) {
+            cells.put(addedCell.name, addedCell);
+        }
+        cell.redefine(compiled, inputs, 0);
+        recalculateFrom(cell);
+    }
+
+    // Makes the name an input holding a plain value.
+    public synchronized void set(String name, double value) {
+        requireName(name);
+        Cell cell = cells.computeIfAbsent(name, Cell::new);
+        cell.redefine(null, Cell.NO_INPUTS, value);
+        recalculateFrom(cell);
+    }
+
+    public synchronized double get(String name) {
+        Cell cell = cells.get(name);
+        if (cell == null || !cell.defined) {
+            throw new IllegalArgumentException("Formula is not defined: " + name);
+        }
+        if (cell.error != null) {
+            throw cell.error;
+        }
+        return cell.value;
+    }
+
+    // Number of formulas evaluated by the last define or set.
+    public synchronized int lastRecalculated() {
+        return lastRecalculated;
+    }
+
+    // Names of all cells, the ones formulas refer to without them being defined included.
+    synchronized Set<String> names() {
+        return new HashSet<>(cells.keySet());
+    }
+
+    private Cell cellOrAdded(String name, List<Cell> added) {
+        Cell cell = cells.get(name);
+        if (cell == null) {
+            cell = new Cell(name);
+            added.add(cell);
+        }
+        return cell;
+    }
+
+    private void requireNoCycle(Cell cell, Cell[] inputs) {
+        Deque<Cell> toVisit = new ArrayDeque<>(List.of(inputs));
+        Set<Cell> visited = new HashSet<>();
+        while (!toVisit.isEmpty()) {
+            Cell input = toVisit.pop();
+            if (input == cell) {
+                throw new IllegalArgumentException("Formula " + cell.name + " would depend on itself");
+            }
+            if (visited.add(input)) {
+                for (Cell next : input.inputs) {
+                    toVisit.push(next);
+                }
+            }
+        }
+    }
+
+    // Kahn's algorithm over the downstream part of the graph only.
+    private void recalculateFrom(Cell changed) {
+        Set<Cell> affected = new LinkedHashSet<>();
+        Deque<Cell> toVisit = new ArrayDeque<>();
+        toVisit.push(changed);
+        while (!toVisit.isEmpty()) {
+            Cell cell = toVisit.pop();
+            if (affected.add(cell)) {
+                cell.dependents.forEach(toVisit::push);
+            }
+        }
+
+        Map<Cell, Integer> pendingInputs = new HashMap<>();
+        for (Cell cell : affected) {
+            for (Cell dependent : cell.dependents) {
+                pendingInputs.merge(dependent, 1, Integer::sum);
+            }
+        }
+        List<Cell> wave = new ArrayList<>();
+        for (Cell cell : affected) {
+            if (!pendingInputs.containsKey(cell)) {
+                wave.add(cell);
+            }
+        }
+        lastRecalculated = 0;
+        while (!wave.isEmpty()) {
+            evaluate(wave);
+            lastRecalculated += wave.size();
+            List<Cell> nextWave = new ArrayList<>();
+            for (Cell cell : wave) {
+                for (Cell dependent : cell.dependents) {
+                    if (pendingInputs.merge(dependent, -1, Integer::sum) == 0) {
+                        nextWave.add(dependent);
+                    }
+                }
+            }
+            wave = nextWave;
+        }
+    }
+
+    private void evaluate(List<Cell> wave) {
+        if (wave.size() < MIN_PARALLEL_WAVE_SIZE) {
+            wave.forEach(Cell::evaluate);
+            return;
+        }
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (int from = 0; from < wave.size(); from += WAVE_CHUNK_SIZE) {
+            List<Cell> chunk = wave.subList(from, Math.min(wave.size(), from + WAVE_CHUNK_SIZE));
+            chunks.add(CompletableFuture.runAsync(() -> chunk.forEach(Cell::evaluate), executor));
+        }
+        CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new)).join();
+    }
+
+    // Names must be what MathEvaluator reads as a variable, so that formulas can refer to them.
+    private static void requireName(String name) {
+        CompiledExpression compiled;
+        try {
+            compiled = MathEvaluator.compile(name);
+        } catch (RuntimeException e) {
+            compiled = null;
+        }
+        if (compiled == null || !compiled.variables().equals(List.of(name))) {
+            throw new IllegalArgumentException("Not a valid formula name: '" + name + "'");
+        }
+    }
+
+    private static class Cell {
+        private static final Cell[] NO_INPUTS = {};
+
+        private final String name;
+        private final Set<Cell> dependents = new LinkedHashSet<>();
+        private Cell[] inputs = NO_INPUTS;
+        private boolean defined;
+        // null for inputs set to a plain value
+        private CompiledExpression compiled;
+        private double inputValue;
+        private double value;
+        private RuntimeException error;
+
+        Cell(String name) {
+            this.name = name;
+            this.error = new IllegalArgumentException("Formula is not defined: " + name);
+        }
+
+        void redefine(CompiledExpression compiled, Cell[] inputs, double inputValue) {
+            for (Cell input : this.inputs) {
+                input.dependents.remove(this);
+            }
+            for (Cell input : inputs) {
+                input.dependents.add(this);
+            }
+            this.defined = true;
+            this.compiled = compiled;
+            this.inputs = inputs;
+            this.inputValue = inputValue;
+        }
+
+        void evaluate() {
+            if (compiled == null) {
+                error = null;
+                value = inputValue;
+                return;
+            }
+            double[] values = new double[inputs.length];
+            for (int i = 0; i < inputs.length; i++) {
+                if (inputs[i].error != null) {
+                    error = inputs[i].error;
+                    return;
+                }
+                values[i] = inputs[i].value;
+            }
+            error = null;
+            value = compiled.evaluate(values);
+        }
+    }
+}
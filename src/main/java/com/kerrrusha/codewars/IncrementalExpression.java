@@ -0,0 +1,274 @@
+package com.kerrrusha.codewars;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+// Expression that is kept parsed while it is being edited, e.g. on every keystroke of a formula editor.
+// The text is split into parenthesis groups; each group keeps its own compiled level, in which the nested groups
+// are placeholders, and its last value. An edit re-scans only the innermost group that contains it, reusing the
+// nested groups the edit did not touch, and then re-evaluates the groups on the way up to the root without
+// parsing them again. An edit that unbalances the group's parentheses is retried on the enclosing group.
+public class IncrementalExpression {
+    private static final char OPENING_PARENTHESE_SYMBOL = '(';
+    private static final char CLOSING_PARENTHESE_SYMBOL = ')';
+    private static final String PLACEHOLDER_PREFIX = "_";
+
+    private final StringBuilder text;
+    private Group root;
+    private RuntimeException structureError;
+    private int lastScannedCharacters;
+
+    public IncrementalExpression(CharSequence expression) {
+        this.text = new StringBuilder(expression);
+        reparseAll();
+    }
+
+    public double value() {
+        if (structureError != null) {
+            throw structureError;
+        }
+        if (root.error != null) {
+            throw root.error;
+        }
+        return root.value;
+    }
+
+    public String text() {
+        return text.toString();
+    }
+
+    // Characters the last edit had to re-scan; nested groups reused as they were are not counted.
+    public int lastScannedCharacters() {
+        return lastScannedCharacters;
+    }
+
+    public void edit(int offset, int removedLength, CharSequence inserted) {
+        if (offset < 0 || removedLength < 0 || offset + removedLength > text.length()) {
+            throw new IndexOutOfBoundsException("Edit [" + offset + ", " + (offset + removedLength)
+                    + ") is out of expression of length " + text.length());
+        }
+        text.replace(offset, offset + removedLength, inserted.toString());
+        if (structureError != null) {
+            reparseAll();
+            return;
+        }
+        int delta = inserted.length() - removedLength;
+
+        // path from the root down to the innermost group whose content fully contains the edited range
+        List<Group> path = new ArrayList<>();
+        List<Integer> contentStarts = new ArrayList<>();
+        path.add(root);
+        contentStarts.add(0);
+        while (true) {
+            Group group = path.get(path.size() - 1);
+            int contentStart = contentStarts.get(contentStarts.size() - 1);
+            Group next = null;
+            for (Group child : group.children) {
+                int childContentStart = contentStart + child.offset + 1;
+                if (offset >= childContentStart && offset + removedLength <= childContentStart + child.contentLength) {
+                    next = child;
+                    contentStarts.add(childContentStart);
+                    break;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            path.add(next);
+        }
+
+        lastScannedCharacters = 0;
+        for (int level = path.size() - 1; level >= 0; level--) {
+            Group group = path.get(level);
+            int contentStart = contentStarts.get(level);
+            List<Group> children = rescan(group, contentStart, group.contentLength + delta, offset, removedLength, delta);
+            if (children == null) {
+                continue;
+            }
+            group.children = children;
+            group.contentLength += delta;
+            compile(group, contentStart);
+            evaluate(group);
+            for (int ancestorLevel = level - 1; ancestorLevel >= 0; ancestorLevel--) {
+                Group ancestor = path.get(ancestorLevel);
+                Group changedChild = path.get(ancestorLevel + 1);
+                ancestor.contentLength += delta;
+                boolean afterChangedChild = false;
+                for (Group child : ancestor.children) {
+                    if (afterChangedChild) {
+                        child.offset += delta;
+                    }
+                    afterChangedChild |= child == changedChild;
+                }
+                evaluate(ancestor);
+            }
+            return;
+        }
+        structureError = new IllegalStateException("Unbalanced parentheses in: " + text);
+    }
+
+    private void reparseAll() {
+        root = new Group(0);
+        root.contentLength = text.length();
+        structureError = null;
+        lastScannedCharacters = 0;
+        List<Group> children = rescan(root, 0, text.length(), 0, 0, 0);
+        if (children == null) {
+            structureError = new IllegalStateException("Unbalanced parentheses in: " + text);
+            return;
+        }
+        root.children = children;
+        compile(root, 0);
+        evaluate(root);
+    }
+
+    // Finds the direct children of a group whose content now spans [contentStart, contentStart + contentLength).
+    // Old children entirely before or after the edited range are reused as they are (shifted by delta if after),
+    // everything else is parsed anew with an explicit stack, so nesting depth does not use the call stack.
+    // Returns null when the content has unbalanced parentheses.
+    private List<Group> rescan(Group group, int contentStart, int contentLength, int editOffset, int removedLength, int delta) {
+        int nextReusable = 0;
+        List<Group> children = new ArrayList<>();
+        Deque<Group> open = new ArrayDeque<>();
+        Deque<Integer> openContentStarts = new ArrayDeque<>();
+        int contentEnd = contentStart + contentLength;
+        int position = contentStart;
+        while (position < contentEnd) {
+            if (open.isEmpty()) {
+                Group reusable = null;
+                while (nextReusable < group.children.size() && reusable == null) {
+                    Group candidate = group.children.get(nextReusable);
+                    int oldOpen = contentStart + candidate.offset;
+                    int oldClose = oldOpen + candidate.contentLength + 1;
+                    int newOpen = oldClose < editOffset ? oldOpen : oldOpen + delta;
+                    if (newOpen > position) {
+                        break;
+                    }
+                    nextReusable++;
+                    if (newOpen == position && (oldClose < editOffset || oldOpen >= editOffset + removedLength)) {
+                        reusable = candidate;
+                    }
+                }
+                if (reusable != null) {
+                    reusable.offset = position - contentStart;
+                    children.add(reusable);
+                    position += reusable.contentLength + 2;
+                    continue;
+                }
+            }
+            char symbol = text.charAt(position);
+            lastScannedCharacters++;
+            if (symbol == OPENING_PARENTHESE_SYMBOL) {
+                int parentContentStart = open.isEmpty() ? contentStart : openContentStarts.peek();
+                open.push(new Group(position - parentContentStart));
+                openContentStarts.push(position + 1);
+            } else if (symbol == CLOSING_PARENTHESE_SYMBOL) {
+                if (open.isEmpty()) {
+                    return null;
+                }
+                Group closed = open.pop();
+                int closedContentStart = openContentStarts.pop();
+                closed.contentLength = position - closedContentStart;
+                compile(closed, closedContentStart);
+                evaluate(closed);
+                (open.isEmpty() ? children : open.peek().children).add(closed);
+            }
+            position++;
+        }
+        return open.isEmpty() ? children : null;
+    }
+
+    // Compiles the group's own level, with every nested group replaced by a placeholder variable "_<index>".
+    // Names with the placeholder prefix are reserved, so a name written in the text never binds to a nested group.
+    private void compile(Group group, int contentStart) {
+        try {
+            StringBuilder level = new StringBuilder();
+            int position = contentStart;
+            for (int i = 0; i < group.children.size(); i++) {
+                Group child = group.children.get(i);
+                int childOpen = contentStart + child.offset;
+                appendWithoutReservedNames(level, position, childOpen);
+                level.append(' ').append(PLACEHOLDER_PREFIX).append(i).append(' ');
+                position = childOpen + child.contentLength + 2;
+            }
+            appendWithoutReservedNames(level, position, contentStart + group.contentLength);
+            CompiledExpression compiled = MathEvaluator.compile(level);
+            int[] childIndexes = new int[compiled.variables().size()];
+            for (int i = 0; i < childIndexes.length; i++) {
+                childIndexes[i] = toChildIndex(compiled.variables().get(i), group.children.size());
+            }
+            group.compiled = compiled;
+            group.childIndexes = childIndexes;
+            group.compileError = null;
+        } catch (RuntimeException e) {
+            group.compiled = null;
+            group.compileError = e;
+        }
+    }
+
+    private void appendWithoutReservedNames(StringBuilder level, int from, int to) {
+        boolean inName = false;
+        for (int i = from; i < to; i++) {
+            char symbol = text.charAt(i);
+            if (!inName && symbol == PLACEHOLDER_PREFIX.charAt(0)) {
+                int end = i;
+                while (end < to && (Character.isLetterOrDigit(text.charAt(end)) || text.charAt(end) == '_')) {
+                    end++;
+                }
+                throw new IllegalArgumentException("Names starting with " + PLACEHOLDER_PREFIX + " are reserved, but expression has: "
+                        + text.substring(i, end));
+            }
+            inName = Character.isLetter(symbol) || symbol == '_' || inName && Character.isDigit(symbol);
+        }
+        level.append(text, from, to);
+    }
+
+    private static int toChildIndex(String variable, int children) {
+        if (variable.startsWith(PLACEHOLDER_PREFIX)) {
+            try {
+                int index = Integer.parseInt(variable.substring(PLACEHOLDER_PREFIX.length()));
+                if (index < children) {
+                    return index;
+                }
+            } catch (NumberFormatException e) {
+                // not a placeholder, reported below
+            }
+        }
+        throw new IllegalArgumentException("Expression has unbound variable: " + variable);
+    }
+
+    private static void evaluate(Group group) {
+        group.error = group.compileError;
+        if (group.error != null) {
+            return;
+        }
+        double[] values = new double[group.childIndexes.length];
+        for (int i = 0; i < values.length; i++) {
+            Group child = group.children.get(group.childIndexes[i]);
+            if (child.error != null) {
+                group.error = child.error;
+                return;
+            }
+            values[i] = child.value;
+        }
+        group.value = group.compiled.evaluate(values);
+    }
+
+    private static class Group {
+        // position of the opening parenthese, relative to the start of the parent's content
+        private int offset;
+        private int contentLength;
+        private List<Group> children = new ArrayList<>();
+        private CompiledExpression compiled;
+        private int[] childIndexes;
+        private RuntimeException compileError;
+        private RuntimeException error;
+        private double value;
+
+        Group(int offset) {
+            this.offset = offset;
+        }
+    }
+}
@@ -1,498 +1,1539 @@
 package com.kerrrusha.codewars;
 
+import jdk.jfr.Event;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Deque;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Queue;
-import java.util.regex.MatchResult;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import static java.lang.Math.min;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
 
 public class MathEvaluator {
-    private static final String WHITESPACE = " ";
     private static final char OPENING_PARENTHESE_SYMBOL = '(';
     private static final char CLOSING_PARENTHESE_SYMBOL = ')';
     private static final char MULTIPLY_SYMBOL = '*';
     private static final char DIVIDE_SYMBOL = '/';
     private static final char ADD_SYMBOL = '+';
     private static final char SUBTRACT_SYMBOL = '-';
-    private static final Pattern NUMBER_PATTERN = Pattern.compile("-?(\\d+(\\.\\d+)?)");
-    private static final List<Character> PRIORITIZED_OPERATIONS = List.of(MULTIPLY_SYMBOL, DIVIDE_SYMBOL);
-    
-    public double calculate(String expression) {
-        List<Object> parsed = parse(expression);
+    private static final char DECIMAL_POINT_SYMBOL = '.';
+    // unary minus never appears in the input as a separate symbol, so it gets its own marker on the operator stack
+    private static final char NEGATE_SYMBOL = '~';
+
+    private static final int CACHE_SEGMENTS = 16;
+    // smaller caches keep one segment, so they hold exactly cacheSize expressions however the hashes fall
+    private static final int MIN_SEGMENT_CAPACITY = 64;
+    // integers up to 2^53 and powers of ten up to 10^22 are exact doubles, so one division of them is correctly rounded
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final int MAX_SIGNIFICANT_DIGITS = 18;
+    private static final double[] EXACT_POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int MIN_BATCH_CHUNK_SIZE = 256;
+    private static final int STREAM_CHUNK_SIZE = 4096;
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 20;
+    private static final int MIN_PARALLEL_CHUNK_LENGTH = 1 << 14;
+    // how many times a piece may be split again (or unwrapped from its parentheses) before it is evaluated sequentially
+    private static final int MAX_SPLIT_DEPTH = 16;
+    private static final ThreadLocal<Evaluation> EVALUATION = ThreadLocal.withInitial(Evaluation::new);
+    private static final ThreadLocal<DecimalEvaluation> DECIMAL_EVALUATION = ThreadLocal.withInitial(DecimalEvaluation::new);
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L,
+            10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L, 10_000_000_000_000L, 100_000_000_000_000L,
+            1_000_000_000_000_000L, 10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L
+    };
+
+    private final CompiledExpressionCache cache;
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    private volatile MathEvaluatorMetrics metrics;
+    private MathContext decimalContext = MathContext.DECIMAL128;
+
+    public MathEvaluator() {
+        this.cache = null;
+    }
 
-        if (parsed.size() == 1) {
-            return (double) parsed.get(0);
+    // Keeps up to cacheSize most recently used expressions compiled, so repeated calculate calls skip parsing.
+    public MathEvaluator(int cacheSize) {
+        if (cacheSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive, but was: " + cacheSize);
         }
+        this.cache = new CompiledExpressionCache(cacheSize);
+    }
 
-        Queue<Integer> prioritizedOperationsIndexes = getPrioritizedOperationsIndexes(parsed);
-        while (!prioritizedOperationsIndexes.isEmpty()) {
-            int operationIndex = prioritizedOperationsIndexes.poll();
-            Operation operation = (Operation) parsed.get(operationIndex);
+    // Expressions of at least this many characters passed to any calculate overload are split and evaluated on
+    // several cores of the common fork-join pool. Set it before sharing the evaluator.
+    public void setParallelThreshold(int parallelThreshold) {
+        if (parallelThreshold <= 0) {
+            throw new IllegalArgumentException("Parallel threshold must be positive, but was: " + parallelThreshold);
+        }
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    // Precision and rounding of calculateDecimal results that have no exact form within the fast path.
+    // Set it before sharing the evaluator.
+    public void setDecimalContext(MathContext decimalContext) {
+        this.decimalContext = Objects.requireNonNull(decimalContext);
+    }
 
-            double leftOperand = (double) parsed.get(operationIndex - 1);
-            double rightOperand = (double) parsed.get(operationIndex + 1);
-            double result = operation.apply(leftOperand, rightOperand);
+    // Evaluates with decimal arithmetic, so e.g. 0.1 + 0.2 is exactly 0.3. Values are longs scaled by a power of ten
+    // as long as they fit; only an overflow, or a division whose quotient has no exact decimal form, falls back to
+    // BigDecimal rounded to the decimal context. Division by zero throws ArithmeticException.
+    public BigDecimal calculateDecimal(CharSequence expression) {
+        return DECIMAL_EVALUATION.get().calculate(expression, decimalContext);
+    }
 
-            replace(parsed, operationIndex, result);
-            prioritizedOperationsIndexes = getPrioritizedOperationsIndexes(parsed);
+    // Starts collecting metrics of this evaluator's calls; calling it again returns the same metrics.
+    public synchronized MathEvaluatorMetrics enableMetrics() {
+        if (metrics == null) {
+            metrics = new MathEvaluatorMetrics(this::cacheStats);
         }
-        return toResult(parsed);
+        return metrics;
     }
 
-    private double toResult(List<Object> parsed) {
-        if (parsed.size() != 1) {
-            throw new IllegalStateException("Parsed list must contain only 1 element to extract result, but have: " + parsed.size());
+    public double calculate(String expression) {
+        if (expression.length() >= parallelThreshold) {
+            return calculateInParallel(expression);
+        }
+        MathEvaluatorMetrics metrics = this.metrics;
+        if (cache != null) {
+            CompiledExpression compiled = cache.get(expression, metrics);
+            return metrics == null ? compiled.evaluate() : evaluateMeasured(metrics, compiled, expression.length());
+        }
+        if (metrics != null) {
+            return calculateMeasured(metrics, expression.length(), evaluation -> evaluation.calculate(expression));
         }
-        return (Double) parsed.get(0);
+        return EVALUATION.get().calculate(expression);
     }
 
-    private void replace(List<Object> parsed, int middleElementIndex, double result) {
-        final int elementsToRemove = getElementsToRemove(parsed, middleElementIndex);
-        int firstElementIndex = middleElementIndex - elementsToRemove / 2;
+    // Reads the expression straight from the sequence, e.g. a StringBuilder or a CharBuffer (from its position to
+    // its limit), without copying it into a String. These overloads never go through the cache.
+    public double calculate(CharSequence expression) {
+        if (expression.length() >= parallelThreshold) {
+            return calculateInParallel(expression);
+        }
+        MathEvaluatorMetrics metrics = this.metrics;
+        if (metrics != null) {
+            return calculateMeasured(metrics, expression.length(), evaluation -> evaluation.calculate(expression));
+        }
+        return EVALUATION.get().calculate(expression);
+    }
 
-        remove(parsed, firstElementIndex, elementsToRemove);
-        parsed.add(firstElementIndex, result);
+    public double calculate(char[] expression, int offset, int length) {
+        if (length >= parallelThreshold) {
+            // the pieces are read on other threads, so not through this thread's reusable view
+            return calculateInParallel(new CharArraySequence().wrap(expression, offset, length));
+        }
+        MathEvaluatorMetrics metrics = this.metrics;
+        if (metrics != null) {
+            return calculateMeasured(metrics, length, evaluation -> evaluation.calculate(expression, offset, length));
+        }
+        return EVALUATION.get().calculate(expression, offset, length);
+    }
 
-        fixUnwiredOperations(parsed);
+    public double calculate(CharBuffer expression) {
+        if (expression.remaining() >= parallelThreshold) {
+            return calculateInParallel(expression);
+        }
+        MathEvaluatorMetrics metrics = this.metrics;
+        if (metrics != null) {
+            return calculateMeasured(metrics, expression.remaining(), evaluation -> evaluation.calculate(expression));
+        }
+        return EVALUATION.get().calculate(expression);
     }
 
-    private void remove(List<Object> parsed, int removeFromIndex, double repeatAmount) {
-        for (int i = 0; i < repeatAmount; i++) {
-            parsed.remove(removeFromIndex);
+    // Reads ASCII bytes from the buffer's position to its limit; the buffer's position is left unchanged.
+    public double calculate(ByteBuffer expression) {
+        if (expression.remaining() >= parallelThreshold) {
+            return calculateInParallel(new ByteBufferSequence().wrap(expression));
+        }
+        MathEvaluatorMetrics metrics = this.metrics;
+        if (metrics != null) {
+            return calculateMeasured(metrics, expression.remaining(), evaluation -> evaluation.calculate(expression));
         }
+        return EVALUATION.get().calculate(expression);
     }
 
-    private int getElementsToRemove(List<Object> parsed, int middleElementIndex) {
-        final int defaultElementsToRemove = 3;
+    private static double calculateMeasured(MathEvaluatorMetrics metrics, int expressionLength,
+                                            ToDoubleFunction<Evaluation> calculation) {
+        Evaluation evaluation = EVALUATION.get();
+        long startedAt = System.nanoTime();
+        Event event = MathEvaluatorMetrics.begin(MathEvaluatorMetrics.Phase.CALCULATE);
+        boolean failed = true;
+        try {
+            double value = calculation.applyAsDouble(evaluation);
+            failed = false;
+            return value;
+        } finally {
+            metrics.record(MathEvaluatorMetrics.Phase.CALCULATE, startedAt, event, expressionLength, evaluation.tokens(), failed);
+        }
+    }
 
-        if (middleElementIndex - 2 < 0 || middleElementIndex + 2 >= parsed.size()) {
-            return defaultElementsToRemove;
+    private static double evaluateMeasured(MathEvaluatorMetrics metrics, CompiledExpression compiled, int expressionLength) {
+        long startedAt = System.nanoTime();
+        Event event = MathEvaluatorMetrics.begin(MathEvaluatorMetrics.Phase.EVALUATE);
+        boolean failed = true;
+        try {
+            double value = compiled.evaluate();
+            failed = false;
+            return value;
+        } finally {
+            metrics.record(MathEvaluatorMetrics.Phase.EVALUATE, startedAt, event, expressionLength, compiled.nodes(), failed);
         }
-        if (parsed.get(middleElementIndex - 2) instanceof OpeningParenthese
-                && parsed.get(middleElementIndex + 2) instanceof ClosingParenthese) {
-            int paranthesesOnTheLeft = 1;
-            for (int i = middleElementIndex - 3; i >= 0; i--) {
-                if (parsed.get(i) instanceof OpeningParenthese) {
-                    paranthesesOnTheLeft++;
-                    continue;
+    }
+
+    private static CompiledExpression compileMeasured(MathEvaluatorMetrics metrics, String expression) {
+        long startedAt = System.nanoTime();
+        Event event = MathEvaluatorMetrics.begin(MathEvaluatorMetrics.Phase.COMPILE);
+        CompiledExpression compiled = null;
+        try {
+            compiled = compile(expression);
+            return compiled;
+        } finally {
+            int tokens = compiled == null ? 0 : compiled.nodes() + compiled.eliminatedNodes();
+            metrics.record(MathEvaluatorMetrics.Phase.COMPILE, startedAt, event, expression.length(), tokens, compiled == null);
+        }
+    }
+
+    private double calculateInParallel(CharSequence expression) {
+        MathEvaluatorMetrics metrics = this.metrics;
+        if (metrics == null) {
+            return calculateInParallelUnmeasured(expression);
+        }
+        long startedAt = System.nanoTime();
+        Event event = MathEvaluatorMetrics.begin(MathEvaluatorMetrics.Phase.CALCULATE);
+        boolean failed = true;
+        try {
+            double value = calculateInParallelUnmeasured(expression);
+            failed = false;
+            return value;
+        } finally {
+            // the pieces are parsed on other threads, so their tokens are not counted
+            metrics.record(MathEvaluatorMetrics.Phase.CALCULATE, startedAt, event, expression.length(), 0, failed);
+        }
+    }
+
+    private double calculateInParallelUnmeasured(CharSequence expression) {
+        try {
+            return ForkJoinPool.commonPool().invoke(new ParallelEvaluation(expression, 0, expression.length(),
+                    parallelThreshold, MAX_SPLIT_DEPTH));
+        } catch (RuntimeException e) {
+            // a piece fails with a message about the piece only, so report the failure the way sequential evaluation does
+            return EVALUATION.get().calculate(expression);
+        }
+    }
+
+    public static CompiledExpression compile(CharSequence expression) {
+        Compilation compilation = new Compilation();
+        new Parser(compilation).parse(expression);
+        return compilation.toCompiledExpression().optimize();
+    }
+
+    public static CompiledExpression compile(char[] expression, int offset, int length) {
+        return compile(new CharArraySequence().wrap(expression, offset, length));
+    }
+
+    public static CompiledExpression compile(ByteBuffer expression) {
+        return compile(new ByteBufferSequence().wrap(expression));
+    }
+
+    // Compiles the batch into one graph in which every distinct sub-expression appears once, however many
+    // expressions contain it, so evaluating the batch computes it once and shares its value.
+    public static CompiledBatch compileAll(List<String> expressions) {
+        return new BatchCompilation().compile(expressions);
+    }
+
+    public BatchResult calculateAll(List<String> expressions) {
+        return calculateAll(expressions, ForkJoinPool.commonPool());
+    }
+
+    // Splits the batch into chunks evaluated concurrently on the executor. A failing expression does not abort the
+    // batch: its value is NaN and its exception is reported under its index.
+    public BatchResult calculateAll(List<String> expressions, Executor executor) {
+        int size = expressions.size();
+        double[] values = new double[size];
+        Map<Integer, RuntimeException> failures = new ConcurrentHashMap<>();
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int chunkSize = Math.max(MIN_BATCH_CHUNK_SIZE, size / (parallelism * 4) + 1);
+
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (int from = 0; from < size; from += chunkSize) {
+            int chunkFrom = from;
+            int chunkTo = Math.min(size, from + chunkSize);
+            chunks.add(CompletableFuture.runAsync(() -> {
+                for (int i = chunkFrom; i < chunkTo; i++) {
+                    try {
+                        values[i] = calculate(expressions.get(i));
+                    } catch (RuntimeException e) {
+                        values[i] = Double.NaN;
+                        failures.put(i, e);
+                    }
                 }
-                break;
+            }, executor));
+        }
+        CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new)).join();
+        return new BatchResult(values, new TreeMap<>(failures));
+    }
+
+    public void calculateAll(Iterator<String> expressions, BatchConsumer consumer) {
+        calculateAll(expressions, ForkJoinPool.commonPool(), consumer);
+    }
+
+    // Streaming variant: reads the expressions in chunks, evaluates a bounded number of chunks concurrently and
+    // hands results to the consumer on the calling thread in input order, so memory stays constant for any input size.
+    public void calculateAll(Iterator<String> expressions, Executor executor, BatchConsumer consumer) {
+        int maxChunksInFlight = 2 * Runtime.getRuntime().availableProcessors();
+        Deque<CompletableFuture<ChunkResult>> inFlight = new ArrayDeque<>();
+        long nextIndex = 0;
+        while (expressions.hasNext()) {
+            List<String> chunk = new ArrayList<>(STREAM_CHUNK_SIZE);
+            while (expressions.hasNext() && chunk.size() < STREAM_CHUNK_SIZE) {
+                chunk.add(expressions.next());
             }
+            long firstIndex = nextIndex;
+            nextIndex += chunk.size();
+            inFlight.add(CompletableFuture.supplyAsync(() -> calculateChunk(chunk, firstIndex), executor));
+            if (inFlight.size() >= maxChunksInFlight) {
+                inFlight.poll().join().deliverTo(consumer);
+            }
+        }
+        while (!inFlight.isEmpty()) {
+            inFlight.poll().join().deliverTo(consumer);
+        }
+    }
 
-            int paranthesesOnTheRight = 1;
-            for (int i = middleElementIndex + 3; i < parsed.size(); i++) {
-                if (parsed.get(i) instanceof ClosingParenthese) {
-                    paranthesesOnTheRight++;
-                    continue;
+    private ChunkResult calculateChunk(List<String> expressions, long firstIndex) {
+        double[] values = new double[expressions.size()];
+        RuntimeException[] failures = null;
+        for (int i = 0; i < values.length; i++) {
+            try {
+                values[i] = calculate(expressions.get(i));
+            } catch (RuntimeException e) {
+                if (failures == null) {
+                    failures = new RuntimeException[values.length];
                 }
-                break;
+                values[i] = Double.NaN;
+                failures[i] = e;
             }
-
-            return 2 * min(paranthesesOnTheLeft, paranthesesOnTheRight) + defaultElementsToRemove;
         }
-        return defaultElementsToRemove;
+        return new ChunkResult(firstIndex, values, failures);
     }
 
-    private Queue<Integer> getPrioritizedOperationsIndexes(List<Object> parsed) {
-        Deque<Vector2> parentheseGroupsOrder = getParentheseGroupsOrder(parsed);
+    public interface BatchConsumer {
+        void accept(long index, double value);
+
+        void failed(long index, RuntimeException failure);
+    }
 
-        Queue<Integer> result = new LinkedList<>();
-        while (!parentheseGroupsOrder.isEmpty()) {
-            Vector2 parentheseGroup = parentheseGroupsOrder.poll();
-            Queue<Integer> operationIndexes = getPrioritizedOperationsIndexesInRange(parsed, parentheseGroup);
-            operationIndexes.forEach(index -> {
-                if (!result.contains(index)){
-                    result.add(index);
+    // values holds NaN at every failed index; failures is sorted by index.
+    public record BatchResult(double[] values, Map<Integer, RuntimeException> failures) {
+        public boolean failed(int index) {
+            return failures.containsKey(index);
+        }
+    }
+
+    private record ChunkResult(long firstIndex, double[] values, RuntimeException[] failures) {
+        void deliverTo(BatchConsumer consumer) {
+            for (int i = 0; i < values.length; i++) {
+                if (failures != null && failures[i] != null) {
+                    consumer.failed(firstIndex + i, failures[i]);
+                } else {
+                    consumer.accept(firstIndex + i, values[i]);
                 }
-            });
+            }
         }
+    }
+
+    public CacheStats cacheStats() {
+        return cache == null ? new CacheStats(0, 0, 0, 0) : cache.stats();
+    }
 
-        return result;
+    public record CacheStats(long hits, long misses, long evictions, int size) {
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
     }
 
-    private Queue<Integer> getPrioritizedOperationsIndexesInRange(List<Object> parsed, Vector2 parentheseGroup) {
-        Queue<Integer> result = new LinkedList<>();
+    // Segmented LRU: each segment is an access-ordered map behind its own lock, so threads looking up
+    // different expressions rarely contend. Compilation happens outside of the lock.
+    private static class CompiledExpressionCache {
+        private final Segment[] segments;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        CompiledExpressionCache(int cacheSize) {
+            segments = new Segment[Math.max(1, Math.min(CACHE_SEGMENTS, cacheSize / MIN_SEGMENT_CAPACITY))];
+            int baseCapacity = cacheSize / segments.length;
+            int remainder = cacheSize % segments.length;
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = new Segment(baseCapacity + (i < remainder ? 1 : 0));
+            }
+        }
 
-        for (int i = parentheseGroup.first; i < parentheseGroup.second; i++) {
-            Object element = parsed.get(i);
-            if (element instanceof Operation operation && PRIORITIZED_OPERATIONS.contains(operation.getSymbol())) {
-                int operationIndex = parsed.indexOf(element);
-                result.add(operationIndex);
+        CompiledExpression get(String expression, MathEvaluatorMetrics metrics) {
+            Segment segment = segments[Math.floorMod(spread(expression.hashCode()), segments.length)];
+            CompiledExpression compiled;
+            synchronized (segment) {
+                compiled = segment.get(expression);
+            }
+            if (compiled != null) {
+                hits.increment();
+                return compiled;
+            }
+            misses.increment();
+            compiled = metrics == null ? compile(expression) : compileMeasured(metrics, expression);
+            synchronized (segment) {
+                CompiledExpression existing = segment.putIfAbsent(expression, compiled);
+                return existing == null ? compiled : existing;
             }
         }
-        for (int i = parentheseGroup.first; i < parentheseGroup.second; i++) {
-            Object element = parsed.get(i);
-            if (element instanceof Operation operation && !PRIORITIZED_OPERATIONS.contains(operation.getSymbol())) {
-                int operationIndex = parsed.indexOf(element);
-                result.add(operationIndex);
+
+        CacheStats stats() {
+            int size = 0;
+            for (Segment segment : segments) {
+                synchronized (segment) {
+                    size += segment.size();
+                }
             }
+            return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), size);
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
         }
 
-        return result;
+        private class Segment extends LinkedHashMap<String, CompiledExpression> {
+            private static final long serialVersionUID = 1L;
+
+            private final int capacity;
+
+            Segment(int capacity) {
+                super(16, 0.75f, true);
+                this.capacity = capacity;
+            }
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledExpression> eldest) {
+                if (size() > capacity) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        }
     }
 
-    private Deque<Vector2> getParentheseGroupsOrder(List<Object> parsed) {
-        Deque<Vector2> parentheseGroupsOrder = new LinkedList<>();
+    // Evaluates one huge expression on several cores. The expression is cut at its top-level operators of the lowest
+    // precedence it has: into terms if it is a sum, otherwise into factors if it is a product; an expression that is
+    // one parenthesized group is unwrapped first. The pieces are evaluated in fork-join tasks, pieces still above the
+    // threshold are cut again, and the piece values are folded left to right exactly like the parser would apply the
+    // operators, so the result is the same as that of sequential evaluation.
+    private static class ParallelEvaluation extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        private final CharSequence expression;
+        private final int from;
+        private final int to;
+        private final int threshold;
+        private final int splitsLeft;
+
+        ParallelEvaluation(CharSequence expression, int from, int to, int threshold, int splitsLeft) {
+            this.expression = expression;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.splitsLeft = splitsLeft;
+        }
 
-        int expectedGroups = getExpectedGroups(parsed);
-        int prevParentheseIndex = -1;
-        while (parentheseGroupsOrder.size() < expectedGroups) {
-            for (int i = 0; i < parsed.size(); i++) {
-                if (contains(parentheseGroupsOrder, i)) {
-                    continue;
+        @Override
+        protected Double compute() {
+            int from = this.from;
+            int to = this.to;
+            int splitsLeft = this.splitsLeft;
+            // the signs in front of the unwrapped groups apply to whatever the inner range evaluates to
+            boolean negated = false;
+            double value;
+            while (true) {
+                while (from < to && Character.isWhitespace(expression.charAt(from))) {
+                    from++;
                 }
-                Object element = parsed.get(i);
-                if (!(element instanceof Parenthese parenthese)) {
-                    continue;
+                while (to > from && Character.isWhitespace(expression.charAt(to - 1))) {
+                    to--;
+                }
+                TopLevelOperators operators = TopLevelOperators.scan(expression, from, to);
+                if (operators == null || splitsLeft == 0 || operators.groupOpen < 0 && operators.size == 0) {
+                    value = EVALUATION.get().calculate(expression, from, to);
+                    break;
                 }
-                if (parenthese.getSymbol() == OPENING_PARENTHESE_SYMBOL) {
-                    prevParentheseIndex = parsed.indexOf(parenthese);
+                if (operators.groupOpen >= 0) {
+                    negated ^= operators.negations % 2 == 1;
+                    from = operators.groupOpen + 1;
+                    to--;
+                    splitsLeft--;
                     continue;
                 }
-                int currentParentheseIndex = parsed.indexOf(parenthese);
-                parentheseGroupsOrder.add(new Vector2(prevParentheseIndex, currentParentheseIndex));
+                value = evaluatePieces(operators, from, to, splitsLeft - 1);
                 break;
             }
+            return negated ? -value : value;
         }
 
-        Queue<Vector2> nonParentheseGroups = getNonParentheseGroups(parentheseGroupsOrder, parsed);
-        parentheseGroupsOrder.addAll(nonParentheseGroups);
+        private double evaluatePieces(TopLevelOperators operators, int from, int to, int splitsLeft) {
+            int pieces = operators.size + 1;
+            int[] pieceStarts = new int[pieces];
+            int[] pieceEnds = new int[pieces];
+            pieceStarts[0] = from;
+            for (int i = 0; i < operators.size; i++) {
+                pieceEnds[i] = operators.positions[i];
+                pieceStarts[i + 1] = operators.positions[i] + 1;
+            }
+            pieceEnds[pieces - 1] = to;
+
+            double[] values = new double[pieces];
+            int chunkLength = Math.max(MIN_PARALLEL_CHUNK_LENGTH, (to - from) / (4 * ForkJoinPool.getCommonPoolParallelism()));
+            List<PieceEvaluation> tasks = new ArrayList<>();
+            int firstPiece = 0;
+            for (int i = 0; i < pieces; i++) {
+                if (pieceEnds[i] - pieceStarts[firstPiece] >= chunkLength || i == pieces - 1) {
+                    tasks.add(new PieceEvaluation(this, pieceStarts, pieceEnds, values, firstPiece, i + 1, splitsLeft));
+                    firstPiece = i + 1;
+                }
+            }
+            invokeAll(tasks);
 
-        return parentheseGroupsOrder;
+            double result = values[0];
+            for (int i = 0; i < operators.size; i++) {
+                result = CompiledExpression.apply(toOpcode(expression.charAt(operators.positions[i])), result, values[i + 1]);
+            }
+            return result;
+        }
     }
 
-    private Queue<Vector2> getNonParentheseGroups(Deque<Vector2> parentheseGroupsOrder, List<Object> parsed) {
-        Queue<Vector2> result = new LinkedList<>();
+    private static class PieceEvaluation extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ParallelEvaluation parent;
+        private final int[] pieceStarts;
+        private final int[] pieceEnds;
+        private final double[] values;
+        private final int firstPiece;
+        private final int lastPiece;
+        private final int splitsLeft;
+
+        PieceEvaluation(ParallelEvaluation parent, int[] pieceStarts, int[] pieceEnds, double[] values,
+                        int firstPiece, int lastPiece, int splitsLeft) {
+            this.parent = parent;
+            this.pieceStarts = pieceStarts;
+            this.pieceEnds = pieceEnds;
+            this.values = values;
+            this.firstPiece = firstPiece;
+            this.lastPiece = lastPiece;
+            this.splitsLeft = splitsLeft;
+        }
 
-        if (parentheseGroupsOrder.isEmpty()) {
-            result.add(new Vector2(0, parsed.size()));
-            return result;
+        @Override
+        protected void compute() {
+            for (int i = firstPiece; i < lastPiece; i++) {
+                if (pieceEnds[i] - pieceStarts[i] >= parent.threshold) {
+                    values[i] = new ParallelEvaluation(parent.expression, pieceStarts[i], pieceEnds[i], parent.threshold,
+                            splitsLeft).compute();
+                } else {
+                    values[i] = EVALUATION.get().calculate(parent.expression, pieceStarts[i], pieceEnds[i]);
+                }
+            }
         }
+    }
 
-        Vector2 lastGroup = parentheseGroupsOrder.getLast();
-        if (lastGroup.first > 0) {
-            result.add(new Vector2(0, lastGroup.first));
+    // Positions of the binary operators outside of any parentheses, of the lowest precedence found there. When the
+    // whole range is one parenthesized group, possibly negated, groupOpen is the position of its opening parenthese.
+    private static class TopLevelOperators {
+        private int[] positions = new int[16];
+        private int size;
+        private int precedence = Integer.MAX_VALUE;
+        private int groupOpen = -1;
+        private int negations;
+
+        // Returns null when the parentheses do not balance, leaving the error to the parser.
+        static TopLevelOperators scan(CharSequence expression, int from, int to) {
+            TopLevelOperators operators = new TopLevelOperators();
+            int depth = 0;
+            int firstOpen = -1;
+            int firstClose = -1;
+            boolean expectOperand = true;
+            for (int i = from; i < to; i++) {
+                char symbol = expression.charAt(i);
+                if (Character.isWhitespace(symbol)) {
+                    continue;
+                }
+                if (symbol == OPENING_PARENTHESE_SYMBOL) {
+                    if (firstOpen < 0) {
+                        firstOpen = i;
+                    }
+                    depth++;
+                    expectOperand = true;
+                } else if (symbol == CLOSING_PARENTHESE_SYMBOL) {
+                    if (--depth < 0) {
+                        return null;
+                    }
+                    if (depth == 0 && firstClose < 0) {
+                        firstClose = i;
+                    }
+                    expectOperand = false;
+                } else if (isBinaryOperation(symbol) && !expectOperand) {
+                    if (depth == 0) {
+                        operators.add(i, precedence(symbol));
+                    }
+                    expectOperand = true;
+                } else if (symbol == SUBTRACT_SYMBOL) {
+                    if (firstOpen < 0) {
+                        operators.negations++;
+                    }
+                } else {
+                    expectOperand = false;
+                }
+            }
+            if (depth != 0) {
+                return null;
+            }
+            if (firstClose == to - 1 && operators.size == 0 && operators.onlyNegationsBefore(expression, from, firstOpen)) {
+                operators.groupOpen = firstOpen;
+            }
+            return operators;
         }
-        if (lastGroup.second < parsed.size()) {
-            result.add(new Vector2(lastGroup.second, parsed.size()));
+
+        private boolean onlyNegationsBefore(CharSequence expression, int from, int position) {
+            for (int i = from; i < position; i++) {
+                char symbol = expression.charAt(i);
+                if (symbol != SUBTRACT_SYMBOL && !Character.isWhitespace(symbol)) {
+                    return false;
+                }
+            }
+            return true;
         }
 
-        return result;
+        private void add(int position, int precedence) {
+            if (precedence < this.precedence) {
+                this.precedence = precedence;
+                size = 0;
+            } else if (precedence > this.precedence) {
+                return;
+            }
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = position;
+        }
     }
 
-    private boolean contains(Queue<Vector2> parentheseGroupsOrder, int i) {
-        return parentheseGroupsOrder.stream().anyMatch(pair -> pair.first == i || pair.second == i);
-    }
+    // Receives the expression in postfix order: operands first, then the operation that consumes them.
+    private interface PostfixConsumer {
+        void constant(double value);
 
-    private int getExpectedGroups(List<Object> parsed) {
-        return (int) (parsed.stream()
-                        .filter(e -> e instanceof Parenthese)
-                        .count() / 2);
-    }
+        // A number written in the expression; consumers that need its exact decimal digits read them from the text.
+        default void literal(CharSequence expression, int from, int to, double value) {
+            constant(value);
+        }
 
-    private List<Object> parse(String expression) {
-        List<Vector2> numberIndexes = getNumberIndexes(expression);
-        List<Vector2> nonNumberIndexes = toNonNumberIndexes(numberIndexes, expression);
-        List<Vector2> allElementIndexes = union(numberIndexes, nonNumberIndexes);
+        void variable(CharSequence expression, int from, int to);
 
-        List<Object> result = new ArrayList<>();
-        for (Vector2 location : allElementIndexes) {
-            String str = expression.substring(location.first, location.second);
-            if (numberIndexes.contains(location)) {
-                double parsed = Double.parseDouble(str);
-                result.add(parsed);
-                continue;
-            }
-            if (nonNumberIndexes.contains(location)) {
-                String raw = str.replace(WHITESPACE, "");
-                result.addAll(tryParseNonNumberElements(raw));
-            }
+        void operation(byte opcode);
+
+        // Lets the consumer supply the value of the whole parenthesized group that opens at the given position, in
+        // which case it returns the position right after the group and the parser skips it; -1 has it parsed.
+        default int reusedGroupEnd(CharSequence expression, int from) {
+            return -1;
         }
 
-        fixUnwiredOperations(result);
-        return result;
+        // Called once the group closed at the given position has been parsed, so its value is the last operand.
+        default void groupClosed(CharSequence expression, int to) {
+        }
     }
 
-    private void fixUnwiredOperations(List<Object> parsed) {
-        for (int i = 0; i < parsed.size() - 1; i++) {
-            if (parsed.get(i) instanceof OpeningParenthese && parsed.get(i + 1) instanceof SubtractOperation) {
-                parsed.set(i + 1, -1d);
-                parsed.add(i + 2, new MultiplyOperation());
+    // Shunting-yard parser: every character is read once and every operator is pushed and emitted once,
+    // so the whole expression is handled in O(n) time with O(nesting depth) stack memory.
+    private static class Parser {
+        private final PostfixConsumer consumer;
+        private CharSequence expression;
+        private char[] operators = new char[16];
+        private int operatorsSize;
+        private int start;
+        private int position;
+        private int end;
+        // operands and operations passed to the consumer
+        private int tokens;
+
+        Parser(PostfixConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        void parse(CharSequence expression) {
+            parse(expression, 0, expression.length());
+        }
+
+        void parse(CharSequence expression, int from, int to) {
+            this.expression = expression;
+            operatorsSize = 0;
+            tokens = 0;
+            start = from;
+            position = from;
+            end = to;
+            try {
+                parseExpression();
+            } finally {
+                this.expression = null;
+                if (operators.length > CompiledExpression.MAX_RETAINED_STACK_SIZE) {
+                    operators = new char[16];
+                }
             }
         }
-        for (int i = 0; i < parsed.size() - 1; i++) {
-            if (parsed.get(i) instanceof Double && parsed.get(i + 1) instanceof Double) {
-                parsed.add(i + 1, new AddOperation());
+
+        private void parseExpression() {
+            boolean expectOperand = true;
+            while (position < end) {
+                char symbol = expression.charAt(position);
+                if (Character.isWhitespace(symbol)) {
+                    position++;
+                } else if (isDigit(symbol)) {
+                    requireOperandExpected(expectOperand, symbol);
+                    int literalStart = position;
+                    double value = readNumber();
+                    consumer.literal(expression, literalStart, position, value);
+                    tokens++;
+                    expectOperand = false;
+                } else if (isIdentifierStart(symbol)) {
+                    requireOperandExpected(expectOperand, symbol);
+                    readVariable();
+                    expectOperand = false;
+                } else if (symbol == OPENING_PARENTHESE_SYMBOL) {
+                    requireOperandExpected(expectOperand, symbol);
+                    int groupEnd = consumer.reusedGroupEnd(expression, position);
+                    if (groupEnd >= 0) {
+                        position = groupEnd;
+                        expectOperand = false;
+                    } else {
+                        pushOperator(OPENING_PARENTHESE_SYMBOL);
+                        position++;
+                    }
+                } else if (symbol == CLOSING_PARENTHESE_SYMBOL) {
+                    requireOperatorExpected(expectOperand, symbol);
+                    closeParenthese();
+                    consumer.groupClosed(expression, position);
+                    position++;
+                } else if (symbol == SUBTRACT_SYMBOL && expectOperand) {
+                    pushOperator(NEGATE_SYMBOL);
+                    position++;
+                } else if (isBinaryOperation(symbol)) {
+                    requireOperatorExpected(expectOperand, symbol);
+                    applyOperatorsOfPrecedence(precedence(symbol));
+                    pushOperator(symbol);
+                    expectOperand = true;
+                    position++;
+                } else {
+                    throw new IllegalStateException("Unexpected value: " + symbol);
+                }
+            }
+            if (expectOperand) {
+                throw new IllegalStateException("Expression is incomplete: " + expression.subSequence(start, end));
+            }
+            applyOperatorsOfPrecedence(0);
+            if (operatorsSize != 0) {
+                throw new IllegalStateException("Unclosed parenthese in: " + expression.subSequence(start, end));
             }
         }
 
-        List<Integer> indexesToRemove = new ArrayList<>();
-        for (int i = 0; i < parsed.size() - 2; i++) {
-            Object first = parsed.get(i);
-            Object second = parsed.get(i + 1);
-            Object third = parsed.get(i + 2);
-            if (first instanceof OpeningParenthese
-                    && second instanceof Double
-                    && third instanceof ClosingParenthese) {
-                indexesToRemove.add(i);
-                indexesToRemove.add(i + 2);
+        // Parses the number in place; only literals with more significant digits than a long holds, or whose
+        // value cannot be rounded exactly from a long mantissa, fall back to Double.parseDouble.
+        private double readNumber() {
+            int from = position;
+            long mantissa = 0;
+            int significantDigits = 0;
+            int fractionDigits = 0;
+            boolean fraction = false;
+            while (position < end) {
+                char symbol = expression.charAt(position);
+                if (isDigit(symbol)) {
+                    if (mantissa != 0 || symbol != '0') {
+                        significantDigits++;
+                    }
+                    if (significantDigits <= MAX_SIGNIFICANT_DIGITS) {
+                        mantissa = mantissa * 10 + (symbol - '0');
+                    }
+                    if (fraction) {
+                        fractionDigits++;
+                    }
+                } else if (symbol == DECIMAL_POINT_SYMBOL && !fraction
+                        && position + 1 < end && isDigit(expression.charAt(position + 1))) {
+                    fraction = true;
+                } else {
+                    break;
+                }
+                position++;
+            }
+            if (significantDigits <= MAX_SIGNIFICANT_DIGITS
+                    && mantissa <= MAX_EXACT_MANTISSA
+                    && fractionDigits < EXACT_POWERS_OF_TEN.length) {
+                return mantissa / EXACT_POWERS_OF_TEN[fractionDigits];
             }
+            return Double.parseDouble(expression.subSequence(from, position).toString());
         }
-        for (int i = 0; i < parsed.size() - 2; i++) {
-            Object first = parsed.get(i);
-            Object second = parsed.get(i + 1);
-            Object third = parsed.get(i + 2);
-            if (first instanceof Operation
-                    && second instanceof SubtractOperation
-                    && third instanceof Double) {
-                indexesToRemove.add(i + 1);
-                parsed.set(i + 2, -1 * (Double) parsed.get(i + 2));
+
+        private void readVariable() {
+            int from = position++;
+            while (position < end && isIdentifierPart(expression.charAt(position))) {
+                position++;
             }
+            consumer.variable(expression, from, position);
+            tokens++;
         }
-        for (int i = 0; i < parsed.size() - 1; i++) {
-            Object first = parsed.get(i);
-            Object second = parsed.get(i + 1);
-            if (first instanceof OpeningParenthese
-                    && second instanceof ClosingParenthese) {
-                indexesToRemove.add(i);
-                indexesToRemove.add(i + 1);
+
+        private void closeParenthese() {
+            applyOperatorsOfPrecedence(0);
+            if (operatorsSize == 0) {
+                throw new IllegalStateException("Unexpected value: " + CLOSING_PARENTHESE_SYMBOL);
             }
+            operatorsSize--;
         }
 
-        List<Object> result = new ArrayList<>();
-        for (int i = 0; i < parsed.size(); i++) {
-            if (indexesToRemove.contains(i)) {
-                continue;
+        // Applies stacked operators down to the nearest opening parenthese while they bind at least as tight as
+        // the given precedence. Every binary operation is left-associative, and unary minus has the highest
+        // precedence of all, so it is always applied before the binary operation that follows its operand.
+        private void applyOperatorsOfPrecedence(int minPrecedence) {
+            while (operatorsSize > 0) {
+                char operator = operators[operatorsSize - 1];
+                if (operator == OPENING_PARENTHESE_SYMBOL || precedence(operator) < minPrecedence) {
+                    return;
+                }
+                operatorsSize--;
+                apply(operator);
             }
-            result.add(parsed.get(i));
         }
 
-        parsed.clear();
-        parsed.addAll(result);
+        private void apply(char operator) {
+            consumer.operation(toOpcode(operator));
+            tokens++;
+        }
 
-        indexesToRemove = new ArrayList<>();
-        for (int i = 0; i < parsed.size() - 1; i++) {
-            Object first = parsed.get(i);
-            Object second = parsed.get(i + 1);
-            if (first instanceof SubtractOperation
-                    && second instanceof SubtractOperation) {
-                indexesToRemove.add(i);
-                parsed.set(i + 1, new AddOperation());
+        private void pushOperator(char operator) {
+            if (operatorsSize == operators.length) {
+                operators = Arrays.copyOf(operators, operatorsSize * 2);
             }
+            operators[operatorsSize++] = operator;
         }
 
-        result = new ArrayList<>();
-        for (int i = 0; i < parsed.size(); i++) {
-            if (indexesToRemove.contains(i)) {
-                continue;
+        private void requireOperandExpected(boolean expectOperand, char symbol) {
+            if (!expectOperand) {
+                throw new IllegalStateException("Unexpected value: " + symbol);
             }
-            result.add(parsed.get(i));
         }
 
-        parsed.clear();
-        parsed.addAll(result);
+        private void requireOperatorExpected(boolean expectOperand, char symbol) {
+            if (expectOperand) {
+                throw new IllegalStateException("Unexpected value: " + symbol);
+            }
+        }
     }
 
-    private List<Object> tryParseNonNumberElements(String raw) {
-        return Arrays.stream(raw.replace(WHITESPACE, "").chars().toArray())
-                .mapToObj(e -> (char) e)
-                .map(ch -> Operation.validChar(ch) ? Operation.parse(ch) : Parenthese.parse(ch))
-                .toList();
-    }
+    // Evaluates while parsing on primitive stacks. One instance is kept per thread and reused, so once its stacks
+    // have grown to fit the expressions seen, calculate allocates nothing.
+    private static class Evaluation implements PostfixConsumer {
+        private final Parser parser = new Parser(this);
+        private double[] operands = new double[16];
+        private int operandsSize;
 
-    private List<Vector2> union(List<Vector2> numberIndexes, List<Vector2> nonNumberIndexes) {
-        List<Vector2> result = new ArrayList<>(numberIndexes);
-        result.addAll(nonNumberIndexes);
-        return result.stream()
-                .sorted()
-                .toList();
-    }
+        private final CharArraySequence charArraySequence = new CharArraySequence();
+        private final ByteBufferSequence byteBufferSequence = new ByteBufferSequence();
 
-    private List<Vector2> toNonNumberIndexes(List<Vector2> numberIndexes, String expression) {
-        List<Vector2> result = new ArrayList<>();
-        for (int i = 0; i < numberIndexes.size() + 1; i++) {
-            Vector2 prev = i - 1 >= 0 ? numberIndexes.get(i - 1) : null;
-            Vector2 next = i < numberIndexes.size() ? numberIndexes.get(i) : null;
+        double calculate(CharSequence expression) {
+            return calculate(expression, 0, expression.length());
+        }
 
-            int from = prev == null ? 0 : prev.second;
-            int to = next == null ? expression.length() : next.first;
-            result.add(new Vector2(from, to));
+        int tokens() {
+            return parser.tokens;
         }
-        return result.stream().distinct().toList();
-    }
 
-    private List<Vector2> getNumberIndexes(String expression) {
-        List<Vector2> result = new ArrayList<>();
-        Matcher matcher = NUMBER_PATTERN.matcher(expression);
-        while (matcher.find()) {
-            MatchResult matchResult = matcher.toMatchResult();
-            result.add(new Vector2(matchResult.start(), matchResult.end()));
+        double calculate(CharSequence expression, int from, int to) {
+            operandsSize = 0;
+            try {
+                parser.parse(expression, from, to);
+                return toResult();
+            } finally {
+                if (operands.length > CompiledExpression.MAX_RETAINED_STACK_SIZE) {
+                    operands = new double[16];
+                }
+            }
         }
-        return result;
-    }
 
-    private interface Parenthese {
-        char getSymbol();
-        
-        static Parenthese parse(char symbol) {
-            return switch (symbol) {
-                case OPENING_PARENTHESE_SYMBOL -> new OpeningParenthese();
-                case CLOSING_PARENTHESE_SYMBOL -> new ClosingParenthese();
-                default -> throw new IllegalStateException("Unexpected value: " + symbol);
-            };
+        double calculate(char[] expression, int offset, int length) {
+            try {
+                return calculate(charArraySequence.wrap(expression, offset, length));
+            } finally {
+                charArraySequence.wrap(null, 0, 0);
+            }
+        }
+
+        double calculate(ByteBuffer expression) {
+            try {
+                return calculate(byteBufferSequence.wrap(expression));
+            } finally {
+                byteBufferSequence.wrap(null);
+            }
         }
-    }
 
-    private static class OpeningParenthese implements Parenthese {
         @Override
-        public char getSymbol() {
-            return OPENING_PARENTHESE_SYMBOL;
+        public void constant(double value) {
+            if (operandsSize == operands.length) {
+                operands = Arrays.copyOf(operands, operandsSize * 2);
+            }
+            operands[operandsSize++] = value;
         }
 
         @Override
-        public String toString() {
-            return "" + getSymbol();
+        public void variable(CharSequence expression, int from, int to) {
+            throw new IllegalArgumentException("Expression has unbound variable: " + expression.subSequence(from, to));
+        }
+
+        @Override
+        public void operation(byte opcode) {
+            if (opcode == CompiledExpression.NEGATE) {
+                operands[operandsSize - 1] = -operands[operandsSize - 1];
+                return;
+            }
+            double rightOperand = operands[--operandsSize];
+            operands[operandsSize - 1] = CompiledExpression.apply(opcode, operands[operandsSize - 1], rightOperand);
+        }
+
+        double toResult() {
+            if (operandsSize != 1) {
+                throw new IllegalStateException("Operand stack must contain only 1 element to extract result, but have: " + operandsSize);
+            }
+            return operands[0];
         }
     }
 
-    private static class ClosingParenthese implements Parenthese {
+    // Evaluates while parsing, on a stack of exact decimals. An operand is a long unscaled value with its scale
+    // (value = unscaled / 10^scale, scale >= 0) unless an overflow or an inexact division made it a BigDecimal;
+    // a BigDecimal result that fits a long again turns back into one.
+    private static class DecimalEvaluation implements PostfixConsumer {
+        private final Parser parser = new Parser(this);
+        private long[] unscaledValues = new long[16];
+        private int[] scales = new int[16];
+        private BigDecimal[] bigValues = new BigDecimal[16];
+        private int operandsSize;
+        private MathContext mathContext;
+
+        BigDecimal calculate(CharSequence expression, MathContext mathContext) {
+            this.mathContext = mathContext;
+            operandsSize = 0;
+            try {
+                parser.parse(expression);
+                if (operandsSize != 1) {
+                    throw new IllegalStateException("Operand stack must contain only 1 element to extract result, but have: " + operandsSize);
+                }
+                return toBigDecimal(0);
+            } finally {
+                Arrays.fill(bigValues, 0, Math.max(operandsSize, 1), null);
+                if (unscaledValues.length > CompiledExpression.MAX_RETAINED_STACK_SIZE) {
+                    unscaledValues = new long[16];
+                    scales = new int[16];
+                    bigValues = new BigDecimal[16];
+                }
+            }
+        }
+
         @Override
-        public char getSymbol() {
-            return CLOSING_PARENTHESE_SYMBOL;
+        public void constant(double value) {
+            throw new IllegalStateException("Unexpected value: " + value);
         }
 
         @Override
-        public String toString() {
-            return "" + getSymbol();
+        public void literal(CharSequence expression, int from, int to, double value) {
+            long unscaled = 0;
+            int scale = 0;
+            boolean fraction = false;
+            for (int i = from; i < to; i++) {
+                char symbol = expression.charAt(i);
+                if (symbol == DECIMAL_POINT_SYMBOL) {
+                    fraction = true;
+                    continue;
+                }
+                if (unscaled > (Long.MAX_VALUE - 9) / 10) {
+                    push(new BigDecimal(expression.subSequence(from, to).toString()));
+                    return;
+                }
+                unscaled = unscaled * 10 + (symbol - '0');
+                if (fraction) {
+                    scale++;
+                }
+            }
+            push(unscaled, scale);
         }
-    }
 
-    private interface Operation {
-        char getSymbol();
+        @Override
+        public void variable(CharSequence expression, int from, int to) {
+            throw new IllegalArgumentException("Expression has unbound variable: " + expression.subSequence(from, to));
+        }
 
-        double apply(double leftOperand, double rightOperand);
+        @Override
+        public void operation(byte opcode) {
+            int left = operandsSize - 1;
+            if (opcode == CompiledExpression.NEGATE) {
+                if (bigValues[left] == null && unscaledValues[left] != Long.MIN_VALUE) {
+                    unscaledValues[left] = -unscaledValues[left];
+                } else {
+                    operandsSize--;
+                    push(toBigDecimal(left).negate());
+                }
+                return;
+            }
+            int right = --operandsSize;
+            left--;
+            if (opcode == CompiledExpression.DIVIDE && isZero(right)) {
+                throw new ArithmeticException("Division by zero");
+            }
+            if (bigValues[left] == null && bigValues[right] == null
+                    && applyExactly(opcode, left, unscaledValues[left], scales[left], unscaledValues[right], scales[right])) {
+                return;
+            }
+            BigDecimal leftOperand = toBigDecimal(left);
+            BigDecimal rightOperand = toBigDecimal(right);
+            bigValues[right] = null;
+            operandsSize--;
+            push(switch (opcode) {
+                case CompiledExpression.ADD -> leftOperand.add(rightOperand, mathContext);
+                case CompiledExpression.SUBTRACT -> leftOperand.subtract(rightOperand, mathContext);
+                case CompiledExpression.MULTIPLY -> leftOperand.multiply(rightOperand, mathContext);
+                case CompiledExpression.DIVIDE -> leftOperand.divide(rightOperand, mathContext);
+                default -> throw new IllegalStateException("Unexpected value: " + opcode);
+            });
+        }
+
+        // Stores the exact result at the left operand and returns true, or returns false on overflow or when
+        // the quotient has more decimal digits than a long holds.
+        private boolean applyExactly(byte opcode, int left, long leftUnscaled, int leftScale, long rightUnscaled, int rightScale) {
+            try {
+                long unscaled;
+                int scale;
+                switch (opcode) {
+                    case CompiledExpression.ADD, CompiledExpression.SUBTRACT -> {
+                        scale = Math.max(leftScale, rightScale);
+                        long leftAligned = Math.multiplyExact(leftUnscaled, powerOfTen(scale - leftScale));
+                        long rightAligned = Math.multiplyExact(rightUnscaled, powerOfTen(scale - rightScale));
+                        unscaled = opcode == CompiledExpression.ADD
+                                ? Math.addExact(leftAligned, rightAligned)
+                                : Math.subtractExact(leftAligned, rightAligned);
+                    }
+                    case CompiledExpression.MULTIPLY -> {
+                        unscaled = Math.multiplyExact(leftUnscaled, rightUnscaled);
+                        scale = leftScale + rightScale;
+                    }
+                    case CompiledExpression.DIVIDE -> {
+                        if (rightUnscaled == -1 && leftUnscaled == Long.MIN_VALUE) {
+                            return false;
+                        }
+                        // long division, one more decimal digit of the quotient per step until the remainder is zero;
+                        // a quotient without exact form overflows within 19 steps
+                        unscaled = leftUnscaled / rightUnscaled;
+                        long remainder = leftUnscaled % rightUnscaled;
+                        scale = leftScale - rightScale;
+                        while (remainder != 0) {
+                            remainder = Math.multiplyExact(remainder, 10);
+                            unscaled = Math.addExact(Math.multiplyExact(unscaled, 10), remainder / rightUnscaled);
+                            remainder %= rightUnscaled;
+                            scale++;
+                        }
+                        if (scale < 0) {
+                            unscaled = Math.multiplyExact(unscaled, powerOfTen(-scale));
+                            scale = 0;
+                        }
+                    }
+                    default -> throw new IllegalStateException("Unexpected value: " + opcode);
+                }
+                unscaledValues[left] = unscaled;
+                scales[left] = scale;
+                return true;
+            } catch (ArithmeticException overflow) {
+                return false;
+            }
+        }
+
+        private static long powerOfTen(int exponent) {
+            if (exponent >= POWERS_OF_TEN.length) {
+                throw new ArithmeticException("long overflow");
+            }
+            return POWERS_OF_TEN[exponent];
+        }
+
+        private boolean isZero(int operand) {
+            return bigValues[operand] == null ? unscaledValues[operand] == 0 : bigValues[operand].signum() == 0;
+        }
+
+        private BigDecimal toBigDecimal(int operand) {
+            BigDecimal value = bigValues[operand];
+            return value != null ? value : BigDecimal.valueOf(unscaledValues[operand], scales[operand]);
+        }
 
-        static boolean validChar(char charToCheck) {
-            return List.of(
-                    MULTIPLY_SYMBOL,
-                    DIVIDE_SYMBOL,
-                    ADD_SYMBOL,
-                    SUBTRACT_SYMBOL
-            ).contains(charToCheck);
+        private void push(BigDecimal value) {
+            BigInteger unscaled = value.unscaledValue();
+            if (value.scale() >= 0 && unscaled.bitLength() < Long.SIZE) {
+                push(unscaled.longValue(), value.scale());
+                return;
+            }
+            push(0, 0);
+            bigValues[operandsSize - 1] = value;
         }
 
-        static Operation parse(char symbol) {
-            return switch (symbol) {
-                case MULTIPLY_SYMBOL -> new MultiplyOperation();
-                case DIVIDE_SYMBOL -> new DivideOperation();
-                case ADD_SYMBOL -> new AddOperation();
-                case SUBTRACT_SYMBOL -> new SubtractOperation();
-                default -> throw new IllegalStateException("Unexpected value: " + symbol);
-            };
+        private void push(long unscaled, int scale) {
+            if (operandsSize == unscaledValues.length) {
+                unscaledValues = Arrays.copyOf(unscaledValues, operandsSize * 2);
+                scales = Arrays.copyOf(scales, operandsSize * 2);
+                bigValues = Arrays.copyOf(bigValues, operandsSize * 2);
+            }
+            unscaledValues[operandsSize] = unscaled;
+            scales[operandsSize] = scale;
+            bigValues[operandsSize++] = null;
         }
     }
 
-    private static class MultiplyOperation implements Operation {
+    private static class Compilation implements PostfixConsumer {
+        private byte[] code = new byte[16];
+        private int codeSize;
+        private double[] constants = new double[16];
+        private int constantsSize;
+        private int[] variableSlots = new int[16];
+        private int variableSlotsSize;
+        private final List<String> variableNames = new ArrayList<>();
+        private final Map<String, Integer> variableIndexes = new HashMap<>();
+        private int stackDepth;
+        private int maxStackDepth;
+
         @Override
-        public char getSymbol() {
-            return MULTIPLY_SYMBOL;
+        public void constant(double value) {
+            if (constantsSize == constants.length) {
+                constants = Arrays.copyOf(constants, constantsSize * 2);
+            }
+            constants[constantsSize++] = value;
+            append(CompiledExpression.CONSTANT);
+            maxStackDepth = Math.max(maxStackDepth, ++stackDepth);
         }
 
         @Override
-        public double apply(double leftOperand, double rightOperand) {
-            return leftOperand * rightOperand;
+        public void variable(CharSequence expression, int from, int to) {
+            String name = expression.subSequence(from, to).toString();
+            int slot = variableIndexes.computeIfAbsent(name, key -> {
+                variableNames.add(key);
+                return variableNames.size() - 1;
+            });
+            if (variableSlotsSize == variableSlots.length) {
+                variableSlots = Arrays.copyOf(variableSlots, variableSlotsSize * 2);
+            }
+            variableSlots[variableSlotsSize++] = slot;
+            append(CompiledExpression.VARIABLE);
+            maxStackDepth = Math.max(maxStackDepth, ++stackDepth);
         }
 
         @Override
-        public String toString() {
-            return "" + getSymbol();
+        public void operation(byte opcode) {
+            append(opcode);
+            if (opcode != CompiledExpression.NEGATE) {
+                stackDepth--;
+            }
+        }
+
+        private void append(byte opcode) {
+            if (codeSize == code.length) {
+                code = Arrays.copyOf(code, codeSize * 2);
+            }
+            code[codeSize++] = opcode;
+        }
+
+        CompiledExpression toCompiledExpression() {
+            return new CompiledExpression(
+                    Arrays.copyOf(code, codeSize),
+                    Arrays.copyOf(constants, constantsSize),
+                    Arrays.copyOf(variableSlots, variableSlotsSize),
+                    variableNames.toArray(String[]::new),
+                    maxStackDepth);
         }
     }
 
-    private static class DivideOperation implements Operation {
-        @Override
-        public char getSymbol() {
-            return DIVIDE_SYMBOL;
+    // Builds the graph of a batch: every node is looked up by its opcode and operands before it is added, so equal
+    // sub-expressions of any expression in the batch end up as the same node. Operands of + and * are put in
+    // a fixed order first, so a + b and b + a are equal too; both orders give the same double.
+    // On top of that, parenthesized groups are remembered by their text, so a group written the same way again is
+    // not even parsed: its node is reused straight away.
+    private static class BatchCompilation implements PostfixConsumer {
+        // shorter groups are cheaper to parse again than to look up
+        private static final int MIN_REUSED_GROUP_LENGTH = 16;
+        private static final long TEXT_HASH_MULTIPLIER = 0x100000001B3L;
+
+        private byte[] opcodes = new byte[16];
+        private int[] leftOperands = new int[16];
+        private int[] rightOperands = new int[16];
+        private double[] constants = new double[16];
+        private int nodesSize;
+        // open addressing table of node indexes, -1 for free slots; kept at most half full
+        private int[] nodeTable = newNodeTable(64);
+        private final List<String> variableNames = new ArrayList<>();
+        private final Map<String, Integer> variableIndexes = new HashMap<>();
+        private int[] stack = new int[16];
+        private int stackSize;
+        private int parsedNodes;
+        private int expressionParsedNodes;
+
+        private final Map<Long, Group> groups = new HashMap<>();
+        private final List<Long> expressionGroups = new ArrayList<>();
+        private String expression;
+        // per position of the current expression: hash of the text before it, the matching parenthese of
+        // a parenthese, and the parsed nodes count when the group opened there
+        private long[] textHashes = new long[16];
+        private long[] multiplierPowers = {1};
+        private int[] matchingParentheses = new int[16];
+        private int[] parsedNodesAtOpen = new int[16];
+
+        CompiledBatch compile(List<String> expressions) {
+            Parser parser = new Parser(this);
+            int[] roots = new int[expressions.size()];
+            Map<Integer, RuntimeException> failures = new TreeMap<>();
+            for (int i = 0; i < roots.length; i++) {
+                int nodesMark = nodesSize;
+                int variablesMark = variableNames.size();
+                stackSize = 0;
+                expressionParsedNodes = 0;
+                expressionGroups.clear();
+                try {
+                    prepare(expressions.get(i));
+                    parser.parse(expressions.get(i));
+                    roots[i] = stack[0];
+                    parsedNodes += expressionParsedNodes;
+                } catch (RuntimeException e) {
+                    roots[i] = -1;
+                    failures.put(i, e);
+                    rollBack(nodesMark, variablesMark);
+                }
+            }
+            expression = null;
+            return new CompiledBatch(
+                    Arrays.copyOf(opcodes, nodesSize),
+                    Arrays.copyOf(leftOperands, nodesSize),
+                    Arrays.copyOf(rightOperands, nodesSize),
+                    Arrays.copyOf(constants, nodesSize),
+                    variableNames.toArray(String[]::new),
+                    roots,
+                    Collections.unmodifiableMap(failures),
+                    parsedNodes);
         }
 
         @Override
-        public double apply(double leftOperand, double rightOperand) {
-            return leftOperand / rightOperand;
+        public void constant(double value) {
+            push(node(CompiledExpression.CONSTANT, 0, 0, value));
         }
 
         @Override
-        public String toString() {
-            return "" + getSymbol();
+        public void variable(CharSequence expression, int from, int to) {
+            String name = expression.subSequence(from, to).toString();
+            int slot = variableIndexes.computeIfAbsent(name, key -> {
+                variableNames.add(key);
+                return variableNames.size() - 1;
+            });
+            push(node(CompiledExpression.VARIABLE, slot, 0, 0));
         }
-    }
 
-    private static class AddOperation implements Operation {
         @Override
-        public char getSymbol() {
-            return ADD_SYMBOL;
+        public void operation(byte opcode) {
+            if (opcode == CompiledExpression.NEGATE) {
+                stack[stackSize - 1] = node(opcode, stack[stackSize - 1], 0, 0);
+                return;
+            }
+            int rightOperand = stack[--stackSize];
+            int leftOperand = stack[stackSize - 1];
+            if ((opcode == CompiledExpression.ADD || opcode == CompiledExpression.MULTIPLY) && leftOperand > rightOperand) {
+                stack[stackSize - 1] = node(opcode, rightOperand, leftOperand, 0);
+            } else {
+                stack[stackSize - 1] = node(opcode, leftOperand, rightOperand, 0);
+            }
         }
 
         @Override
-        public double apply(double leftOperand, double rightOperand) {
-            return leftOperand + rightOperand;
+        public int reusedGroupEnd(CharSequence expression, int from) {
+            int to = matchingParentheses[from] + 1;
+            if (to == 0 || to - from < MIN_REUSED_GROUP_LENGTH) {
+                return -1;
+            }
+            Group group = groups.get(textHash(from, to));
+            if (group == null || !group.expression.regionMatches(group.from, this.expression, from, to - from)) {
+                parsedNodesAtOpen[from] = expressionParsedNodes;
+                return -1;
+            }
+            push(group.node);
+            expressionParsedNodes += group.parsedNodes;
+            return to;
         }
 
         @Override
-        public String toString() {
-            return "" + getSymbol();
+        public void groupClosed(CharSequence expression, int to) {
+            int from = matchingParentheses[to];
+            if (to + 1 - from < MIN_REUSED_GROUP_LENGTH) {
+                return;
+            }
+            long hash = textHash(from, to + 1);
+            if (groups.putIfAbsent(hash, new Group(this.expression, from, to + 1, stack[stackSize - 1],
+                    expressionParsedNodes - parsedNodesAtOpen[from])) == null) {
+                expressionGroups.add(hash);
+            }
+        }
+
+        // Hashes every prefix of the expression, so the text of any group hashes in O(1), and pairs up parentheses.
+        private void prepare(String expression) {
+            this.expression = expression;
+            int length = expression.length();
+            if (textHashes.length <= length) {
+                int capacity = Math.max(length + 1, textHashes.length * 2);
+                textHashes = new long[capacity];
+                matchingParentheses = new int[capacity];
+                parsedNodesAtOpen = new int[capacity];
+            }
+            if (multiplierPowers.length <= length) {
+                long[] powers = Arrays.copyOf(multiplierPowers, textHashes.length);
+                for (int i = multiplierPowers.length; i < powers.length; i++) {
+                    powers[i] = powers[i - 1] * TEXT_HASH_MULTIPLIER;
+                }
+                multiplierPowers = powers;
+            }
+            int[] open = stack;
+            int openSize = 0;
+            long hash = 0;
+            for (int i = 0; i < length; i++) {
+                char symbol = expression.charAt(i);
+                hash = hash * TEXT_HASH_MULTIPLIER + symbol;
+                textHashes[i + 1] = hash;
+                if (symbol == OPENING_PARENTHESE_SYMBOL) {
+                    if (openSize == open.length) {
+                        open = Arrays.copyOf(open, openSize * 2);
+                    }
+                    open[openSize++] = i;
+                    matchingParentheses[i] = -1;
+                } else if (symbol == CLOSING_PARENTHESE_SYMBOL) {
+                    int opening = openSize > 0 ? open[--openSize] : -1;
+                    if (opening >= 0) {
+                        matchingParentheses[opening] = i;
+                    }
+                    matchingParentheses[i] = opening;
+                }
+            }
+            stack = open;
+        }
+
+        private long textHash(int from, int to) {
+            return textHashes[to] - textHashes[from] * multiplierPowers[to - from];
+        }
+
+        private void push(int node) {
+            if (stackSize == stack.length) {
+                stack = Arrays.copyOf(stack, stackSize * 2);
+            }
+            stack[stackSize++] = node;
+        }
+
+        private int node(byte opcode, int leftOperand, int rightOperand, double constant) {
+            expressionParsedNodes++;
+            long constantBits = Double.doubleToRawLongBits(constant);
+            int mask = nodeTable.length - 1;
+            int slot = hash(opcode, leftOperand, rightOperand, constantBits) & mask;
+            for (int node = nodeTable[slot]; node >= 0; node = nodeTable[slot]) {
+                if (opcodes[node] == opcode && leftOperands[node] == leftOperand && rightOperands[node] == rightOperand
+                        && Double.doubleToRawLongBits(constants[node]) == constantBits) {
+                    return node;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (nodesSize == opcodes.length) {
+                opcodes = Arrays.copyOf(opcodes, nodesSize * 2);
+                leftOperands = Arrays.copyOf(leftOperands, nodesSize * 2);
+                rightOperands = Arrays.copyOf(rightOperands, nodesSize * 2);
+                constants = Arrays.copyOf(constants, nodesSize * 2);
+            }
+            opcodes[nodesSize] = opcode;
+            leftOperands[nodesSize] = leftOperand;
+            rightOperands[nodesSize] = rightOperand;
+            constants[nodesSize] = constant;
+            nodeTable[slot] = nodesSize;
+            if (++nodesSize * 2 > nodeTable.length) {
+                rebuildNodeTable(nodeTable.length * 2);
+            }
+            return nodesSize - 1;
+        }
+
+        private void rebuildNodeTable(int capacity) {
+            nodeTable = newNodeTable(capacity);
+            int mask = capacity - 1;
+            for (int node = 0; node < nodesSize; node++) {
+                int slot = hash(opcodes[node], leftOperands[node], rightOperands[node],
+                        Double.doubleToRawLongBits(constants[node])) & mask;
+                while (nodeTable[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                nodeTable[slot] = node;
+            }
+        }
+
+        private record Group(String expression, int from, int to, int node, int parsedNodes) {
+        }
+
+        private static int[] newNodeTable(int capacity) {
+            int[] table = new int[capacity];
+            Arrays.fill(table, -1);
+            return table;
+        }
+
+        private static int hash(byte opcode, int leftOperand, int rightOperand, long constantBits) {
+            long hash = opcode * 0x9E3779B97F4A7C15L + leftOperand;
+            hash = hash * 0x9E3779B97F4A7C15L + rightOperand;
+            hash = (hash * 0x9E3779B97F4A7C15L + constantBits) * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32));
+        }
+
+        // Forgets the nodes and variables of an expression that failed to parse, so the batch does not need them.
+        private void rollBack(int nodesMark, int variablesMark) {
+            expressionGroups.forEach(groups::remove);
+            if (nodesSize > nodesMark) {
+                nodesSize = nodesMark;
+                rebuildNodeTable(nodeTable.length);
+            }
+            while (variableNames.size() > variablesMark) {
+                variableIndexes.remove(variableNames.remove(variableNames.size() - 1));
+            }
         }
     }
 
-    private static class SubtractOperation implements Operation {
+    // Reusable read-only view of a char[] slice, so the parser can scan it without copying.
+    private static class CharArraySequence implements CharSequence {
+        private char[] chars;
+        private int offset;
+        private int length;
+
+        CharArraySequence wrap(char[] chars, int offset, int length) {
+            if (chars != null) {
+                Objects.checkFromIndexSize(offset, length, chars.length);
+            }
+            this.chars = chars;
+            this.offset = offset;
+            this.length = length;
+            return this;
+        }
+
         @Override
-        public char getSymbol() {
-            return SUBTRACT_SYMBOL;
+        public int length() {
+            return length;
         }
 
         @Override
-        public double apply(double leftOperand, double rightOperand) {
-            return leftOperand - rightOperand;
+        public char charAt(int index) {
+            return chars[offset + index];
         }
 
         @Override
-        public String toString() {
-            return "" + getSymbol();
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, offset + start, end - start);
         }
-    }
 
-    private record Vector2(int first, int second) implements Comparable<Vector2> {
         @Override
         public String toString() {
-            return "{" + first + ", " + second + "}";
+            return new String(chars, offset, length);
         }
+    }
 
-        @Override
-        public int compareTo(Vector2 other) {
-            return Integer.compare(this.first, other.first);
+    // Reusable read-only view of the remaining bytes of a buffer as ASCII characters. Uses absolute reads only,
+    // so the buffer's position is never moved.
+    private static class ByteBufferSequence implements CharSequence {
+        private ByteBuffer buffer;
+        private int offset;
+        private int length;
+
+        ByteBufferSequence wrap(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.offset = buffer == null ? 0 : buffer.position();
+            this.length = buffer == null ? 0 : buffer.remaining();
+            return this;
         }
 
         @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
+        public int length() {
+            return length;
+        }
 
-            Vector2 vector2 = (Vector2) o;
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(offset + index) & 0xFF);
+        }
 
-            if (first != vector2.first) return false;
-            return second == vector2.second;
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            byte[] bytes = new byte[end - start];
+            buffer.get(offset + start, bytes);
+            return new String(bytes, StandardCharsets.US_ASCII);
         }
 
         @Override
-        public int hashCode() {
-            int result = first;
-            result = 31 * result + second;
-            return result;
+        public String toString() {
+            return subSequence(0, length).toString();
         }
     }
+
+    private static boolean isDigit(char symbol) {
+        return symbol >= '0' && symbol <= '9';
+    }
+
+    private static boolean isIdentifierStart(char symbol) {
+        return symbol == '_' || (symbol >= 'a' && symbol <= 'z') || (symbol >= 'A' && symbol <= 'Z');
+    }
+
+    private static boolean isIdentifierPart(char symbol) {
+        return isIdentifierStart(symbol) || isDigit(symbol);
+    }
+
+    private static boolean isBinaryOperation(char symbol) {
+        return symbol == MULTIPLY_SYMBOL || symbol == DIVIDE_SYMBOL || symbol == ADD_SYMBOL || symbol == SUBTRACT_SYMBOL;
+    }
+
+    private static byte toOpcode(char operator) {
+        return switch (operator) {
+            case MULTIPLY_SYMBOL -> CompiledExpression.MULTIPLY;
+            case DIVIDE_SYMBOL -> CompiledExpression.DIVIDE;
+            case ADD_SYMBOL -> CompiledExpression.ADD;
+            case SUBTRACT_SYMBOL -> CompiledExpression.SUBTRACT;
+            case NEGATE_SYMBOL -> CompiledExpression.NEGATE;
+            default -> throw new IllegalStateException("Unexpected value: " + operator);
+        };
+    }
+
+    private static int precedence(char operator) {
+        return switch (operator) {
+            case ADD_SYMBOL, SUBTRACT_SYMBOL -> 1;
+            case MULTIPLY_SYMBOL, DIVIDE_SYMBOL -> 2;
+            case NEGATE_SYMBOL -> 3;
+            default -> throw new IllegalStateException("Unexpected value: " + operator);
+        };
+    }
 }
@@ -0,0 +1,163 @@
+package com.kerrrusha.codewars;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Opt-in instrumentation of one MathEvaluator, see MathEvaluator.enableMetrics: per phase counters of calls,
+// failures and tokens, a latency histogram with power-of-two nanosecond buckets, the evaluator's cache statistics,
+// and JDK Flight Recorder events that are written whenever a recording enables them. An evaluator without metrics
+// pays one field read per call.
+public final class MathEvaluatorMetrics {
+    public enum Phase {
+        // parsing and evaluating in the same pass, without a compiled expression
+        CALCULATE,
+        // parsing into a compiled expression, optimization included
+        COMPILE,
+        // running a compiled expression
+        EVALUATE
+    }
+
+    // bucket i holds latencies of [2^(i-1), 2^i) nanoseconds, bucket 0 holds zero
+    private static final int HISTOGRAM_BUCKETS = 64;
+
+    private final Map<Phase, PhaseRecorder> recorders = new EnumMap<>(Phase.class);
+    private final Supplier<MathEvaluator.CacheStats> cacheStats;
+
+    MathEvaluatorMetrics(Supplier<MathEvaluator.CacheStats> cacheStats) {
+        this.cacheStats = cacheStats;
+        for (Phase phase : Phase.values()) {
+            recorders.put(phase, new PhaseRecorder());
+        }
+    }
+
+    public Snapshot snapshot() {
+        Map<Phase, PhaseStats> phases = new EnumMap<>(Phase.class);
+        recorders.forEach((phase, recorder) -> phases.put(phase, recorder.stats()));
+        return new Snapshot(phases, cacheStats.get());
+    }
+
+    // Returns the Flight Recorder event of the phase, already begun, or null when no recording wants it.
+    static Event begin(Phase phase) {
+        Event event = phase == Phase.COMPILE ? new ParseEvent() : new EvaluateEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    void record(Phase phase, long startedAt, Event event, int expressionLength, int tokens, boolean failed) {
+        long nanos = System.nanoTime() - startedAt;
+        recorders.get(phase).record(nanos, tokens, failed);
+        if (event instanceof ParseEvent parse) {
+            parse.expressionLength = expressionLength;
+            parse.tokens = tokens;
+            parse.failed = failed;
+            parse.commit();
+        } else if (event instanceof EvaluateEvent evaluate) {
+            evaluate.phase = phase.name();
+            evaluate.expressionLength = expressionLength;
+            evaluate.tokens = tokens;
+            evaluate.failed = failed;
+            evaluate.commit();
+        }
+    }
+
+    public record Snapshot(Map<Phase, PhaseStats> phases, MathEvaluator.CacheStats cache) {
+        public PhaseStats phase(Phase phase) {
+            return phases.get(phase);
+        }
+    }
+
+    public record PhaseStats(long calls, long failures, long tokens, long totalNanos, long[] latencyHistogram) {
+        public double meanNanos() {
+            return calls == 0 ? 0 : (double) totalNanos / calls;
+        }
+
+        // Upper bound of the histogram bucket that holds the given quantile, e.g. 0.99, of the latencies.
+        public long percentileNanos(double quantile) {
+            long rank = (long) Math.ceil(quantile * calls);
+            long seen = 0;
+            for (int i = 0; i < latencyHistogram.length; i++) {
+                seen += latencyHistogram[i];
+                if (seen >= rank && seen > 0) {
+                    return i == 0 ? 0 : i == HISTOGRAM_BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+                }
+            }
+            return 0;
+        }
+    }
+
+    private static class PhaseRecorder {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder tokens = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder[] latencyHistogram = new LongAdder[HISTOGRAM_BUCKETS];
+
+        PhaseRecorder() {
+            Arrays.setAll(latencyHistogram, bucket -> new LongAdder());
+        }
+
+        void record(long nanos, int tokens, boolean failed) {
+            calls.increment();
+            if (failed) {
+                failures.increment();
+            }
+            this.tokens.add(tokens);
+            totalNanos.add(nanos);
+            latencyHistogram[Math.min(HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)))].increment();
+        }
+
+        PhaseStats stats() {
+            long[] histogram = new long[HISTOGRAM_BUCKETS];
+            Arrays.setAll(histogram, bucket -> latencyHistogram[bucket].sum());
+            return new PhaseStats(calls.sum(), failures.sum(), tokens.sum(), totalNanos.sum(), histogram);
+        }
+    }
+
+    @Name("com.kerrrusha.codewars.Parse")
+    @Label("Expression Parse")
+    @Description("Parsing of an expression into a compiled expression")
+    @Category("MathEvaluator")
+    @StackTrace(false)
+    static class ParseEvent extends Event {
+        @Label("Expression Length")
+        int expressionLength;
+
+        @Label("Tokens")
+        int tokens;
+
+        @Label("Failed")
+        boolean failed;
+    }
+
+    @Name("com.kerrrusha.codewars.Evaluate")
+    @Label("Expression Evaluation")
+    @Description("Evaluation of an expression, either parsed on the fly or compiled")
+    @Category("MathEvaluator")
+    @StackTrace(false)
+    static class EvaluateEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Expression Length")
+        int expressionLength;
+
+        @Label("Tokens")
+        int tokens;
+
+        @Label("Failed")
+        boolean failed;
+    }
+}
@@ -0,0 +1,143 @@
+package com.kerrrusha.codewars;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+// Run with: java -cp target/classes:target/test-classes com.kerrrusha.codewars.BattleFieldBenchmark
+class BattleFieldBenchmark {
+    private static final int VALIDATIONS_PER_THREAD = 2_000_000;
+
+    private static final int[][] VALID_BOARD = {
+            {1, 0, 0, 0, 0, 1, 1, 0, 0, 0},
+            {1, 0, 1, 0, 0, 0, 0, 0, 1, 0},
+            {1, 0, 1, 0, 1, 1, 1, 0, 1, 0},
+            {1, 0, 0, 0, 0, 0, 0, 0, 0, 0},
+            {0, 0, 0, 0, 0, 0, 0, 0, 1, 0},
+            {0, 0, 0, 0, 1, 1, 1, 0, 0, 0},
+            {0, 0, 0, 0, 0, 0, 0, 0, 1, 0},
+            {0, 0, 0, 1, 0, 0, 0, 0, 0, 0},
+            {0, 0, 0, 0, 0, 0, 0, 1, 0, 0},
+            {0, 0, 0, 0, 0, 0, 0, 0, 0, 0}
+    };
+
+    public static void main(String[] args) throws Exception {
+        benchmarkBitboard();
+        benchmarkThreadScaling();
+        benchmarkBulk();
+        benchmarkCounting();
+    }
+
+    private static void benchmarkCounting() {
+        BattleFieldCounter counter = new BattleFieldCounter();
+        long startedAt = System.nanoTime();
+        long boards = counter.count();
+        System.out.printf("%,d valid classic boards counted in %.1f s%n", boards, (System.nanoTime() - startedAt) / 1e9);
+
+        Random random = new Random();
+        int samples = 1_000;
+        startedAt = System.nanoTime();
+        for (int i = 0; i < samples; i++) {
+            counter.sample(random);
+        }
+        System.out.printf("%.1f us per uniform sample%n", (System.nanoTime() - startedAt) / 1e3 / samples);
+    }
+
+    private static void benchmarkBulk() throws IOException {
+        int boards = 4_000_000;
+        int[][] touching = new int[10][];
+        for (int i = 0; i < 10; i++) {
+            touching[i] = VALID_BOARD[i].clone();
+        }
+        touching[4][7] = 1;
+        byte[] valid = BattleFieldBulkValidator.pack(VALID_BOARD);
+        byte[] invalid = BattleFieldBulkValidator.pack(touching);
+        Path input = Files.createTempFile("boards", ".bin");
+        Path bitmap = Files.createTempFile("boards", ".bitmap");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(input))) {
+                for (int i = 0; i < boards; i++) {
+                    out.write(i % 3 == 0 ? invalid : valid);
+                }
+            }
+            for (int round = 0; round < 3; round++) {
+                BattleFieldBulkValidator.Summary summary = new BattleFieldBulkValidator().validate(input, bitmap);
+                System.out.printf("bulk %,d boards, %,d valid: %,14.0f boards/s%n", summary.boards(), summary.valid(), summary.boardsPerSecond());
+            }
+        } finally {
+            Files.delete(input);
+            Files.delete(bitmap);
+        }
+    }
+
+    private static void benchmarkBitboard() {
+        long low = BattleFieldBitboard.packLow(VALID_BOARD);
+        long high = BattleFieldBitboard.packHigh(VALID_BOARD);
+        for (int round = 0; round < 3; round++) {
+            double arrays = measure(() -> BattleField.fieldValidator(VALID_BOARD));
+            double packing = measure(() -> BattleFieldBitboard.fieldValidator(VALID_BOARD));
+            double packed = measure(() -> BattleFieldBitboard.validate(low, high));
+            System.out.printf("int[][] %6.1f ns, bitboard from int[][] %6.1f ns, pre-packed bitboard %6.1f ns%n", arrays, packing, packed);
+        }
+    }
+
+    // ns per validation
+    private static double measure(BooleanSupplier validation) {
+        int valid = 0;
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < VALIDATIONS_PER_THREAD; i++) {
+            valid += validation.getAsBoolean() ? 1 : 0;
+        }
+        double nanos = (double) (System.nanoTime() - startedAt) / VALIDATIONS_PER_THREAD;
+        if (valid != VALIDATIONS_PER_THREAD) {
+            throw new IllegalStateException("Unexpected value: " + valid);
+        }
+        return nanos;
+    }
+
+    private static void benchmarkThreadScaling() throws Exception {
+        int processors = Runtime.getRuntime().availableProcessors();
+        double singleThreaded = 0;
+        for (int threads = 1; threads <= processors; threads *= 2) {
+            validateOnThreads(threads);
+            double boardsPerSecond = validateOnThreads(threads);
+            if (threads == 1) {
+                singleThreaded = boardsPerSecond;
+            }
+            System.out.printf("%2d threads %,14.0f boards/s (%.2fx)%n", threads, boardsPerSecond, boardsPerSecond / singleThreaded);
+        }
+    }
+
+    private static double validateOnThreads(int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                tasks.add(() -> {
+                    int valid = 0;
+                    for (int j = 0; j < VALIDATIONS_PER_THREAD; j++) {
+                        valid += BattleField.fieldValidator(VALID_BOARD) ? 1 : 0;
+                    }
+                    return valid;
+                });
+            }
+            long startedAt = System.nanoTime();
+            for (Future<Integer> result : executor.invokeAll(tasks)) {
+                result.get();
+            }
+            return (double) threads * VALIDATIONS_PER_THREAD * 1e9 / (System.nanoTime() - startedAt);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.kerrrusha.codewars;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BattleFieldBitboardTest {
+
+    private static final int[][] battleField = {
+            {1, 0, 0, 0, 0, 1, 1, 0, 0, 0},
+            {1, 0, 1, 0, 0, 0, 0, 0, 1, 0},
+            {1, 0, 1, 0, 1, 1, 1, 0, 1, 0},
+            {1, 0, 0, 0, 0, 0, 0, 0, 0, 0},
+            {0, 0, 0, 0, 0, 0, 0, 0, 1, 0},
+            {0, 0, 0, 0, 1, 1, 1, 0, 0, 0},
+            {0, 0, 0, 0, 0, 0, 0, 0, 1, 0},
+            {0, 0, 0, 1, 0, 0, 0, 0, 0, 0},
+            {0, 0, 0, 0, 0, 0, 0, 1, 0, 0},
+            {0, 0, 0, 0, 0, 0, 0, 0, 0, 0}
+    };
+
+    @Test
+    public void testValid() {
+        assertTrue(BattleFieldBitboard.fieldValidator(battleField));
+        assertTrue(BattleFieldBitboard.validate(BattleFieldBitboard.packLow(battleField), BattleFieldBitboard.packHigh(battleField)));
+    }
+
+    @Test
+    public void testInvalid() {
+        int[][] touchingAcrossHalves = copy(battleField);
+        touchingAcrossHalves[3][7] = 1;
+        touchingAcrossHalves[4][8] = 0;
+        touchingAcrossHalves[5][8] = 1;
+        assertFalse(BattleFieldBitboard.fieldValidator(touchingAcrossHalves));
+
+        int[][] lShaped = copy(battleField);
+        lShaped[1][5] = 1;
+        lShaped[2][8] = 0;
+        assertFalse(BattleFieldBitboard.fieldValidator(lShaped));
+
+        int[][] tooLong = copy(battleField);
+        tooLong[4][0] = 1;
+        tooLong[8][7] = 0;
+        assertFalse(BattleFieldBitboard.fieldValidator(tooLong));
+
+        int[][] wrappingRow = copy(battleField);
+        wrappingRow[0][9] = 1;
+        wrappingRow[8][7] = 0;
+        assertFalse(BattleFieldBitboard.fieldValidator(wrappingRow));
+    }
+
+    @Test
+    public void testShipAcrossHalves() {
+        int[][] crossing = copy(battleField);
+        // the vertical battleship moves down to rows 2-5, over the boundary of the two words
+        crossing[0][0] = 0;
+        crossing[1][0] = 0;
+        crossing[4][0] = 1;
+        crossing[5][0] = 1;
+        assertEquals(BattleField.fieldValidator(crossing), BattleFieldBitboard.fieldValidator(crossing));
+        assertTrue(BattleFieldBitboard.fieldValidator(crossing));
+    }
+
+    @Test
+    public void testRejectsOtherSizes() {
+        assertThrows(IllegalArgumentException.class, () -> BattleFieldBitboard.fieldValidator(new int[10][12]));
+        assertThrows(IllegalArgumentException.class, () -> BattleFieldBitboard.validate(1L << 50, 0));
+    }
+
+    @Test
+    public void testMatchesBattleField() {
+        Random random = new Random(19);
+        int valid = 0;
+        for (int i = 0; i < 20_000; i++) {
+            int[][] board = randomFleet(random);
+            for (int mutations = random.nextInt(3); mutations > 0; mutations--) {
+                board[random.nextInt(10)][random.nextInt(10)] ^= 1;
+            }
+            boolean expected = BattleField.fieldValidator(board);
+            assertEquals(expected, BattleFieldBitboard.fieldValidator(board), () -> toString(board));
+            valid += expected ? 1 : 0;
+        }
+        assertTrue(valid > 1_000);
+    }
+
+    // Ships placed anywhere, touching or not, so that both valid and invalid fleets come up.
+    private static int[][] randomFleet(Random random) {
+        int[][] board = new int[10][10];
+        for (int length : new int[]{4, 3, 3, 2, 2, 2, 1, 1, 1, 1}) {
+            for (int attempt = 0; attempt < 20; attempt++) {
+                boolean vertical = random.nextBoolean();
+                int i = random.nextInt(vertical ? 11 - length : 10);
+                int j = random.nextInt(vertical ? 10 : 11 - length);
+                if (attempt < 19 && !fitsApart(board, i, j, length, vertical)) {
+                    continue;
+                }
+                for (int k = 0; k < length; k++) {
+                    board[vertical ? i + k : i][vertical ? j : j + k] = 1;
+                }
+                break;
+            }
+        }
+        return board;
+    }
+
+    private static boolean fitsApart(int[][] board, int i, int j, int length, boolean vertical) {
+        int lastI = vertical ? i + length - 1 : i;
+        int lastJ = vertical ? j : j + length - 1;
+        for (int a = Math.max(0, i - 1); a <= Math.min(9, lastI + 1); a++) {
+            for (int b = Math.max(0, j - 1); b <= Math.min(9, lastJ + 1); b++) {
+                if (board[a][b] == 1) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int[][] copy(int[][] board) {
+        int[][] copy = new int[board.length][];
+        for (int i = 0; i < board.length; i++) {
+            copy[i] = board[i].clone();
+        }
+        return copy;
+    }
+
+    private static String toString(int[][] board) {
+        StringBuilder text = new StringBuilder();
+        for (int[] row : board) {
+            for (int cell : row) {
+                text.append(cell);
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+}
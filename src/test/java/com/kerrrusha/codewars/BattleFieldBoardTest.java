@@ -0,0 +1,129 @@
+package com.kerrrusha.codewars;
+
+import com.kerrrusha.codewars.BattleFieldBoard.Ship;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BattleFieldBoardTest {
+
+    private static final List<Ship> FLEET = List.of(
+            new Ship(0, 0, 4, true),
+            new Ship(1, 2, 2, true),
+            new Ship(2, 4, 3, false),
+            new Ship(5, 4, 3, false),
+            new Ship(0, 5, 2, false),
+            new Ship(1, 8, 2, true),
+            new Ship(4, 8, 1, false),
+            new Ship(6, 8, 1, false),
+            new Ship(7, 3, 1, false),
+            new Ship(8, 7, 1, false));
+
+    @Test
+    public void testPlacementEdits() {
+        BattleFieldBoard board = new BattleFieldBoard();
+        for (Ship ship : FLEET) {
+            assertFalse(board.isValid());
+            board.place(ship);
+        }
+        assertTrue(board.isValid());
+        assertTrue(BattleField.fieldValidator(board.toField()));
+
+        Ship submarine = board.move(new Ship(8, 7, 1, false), 4, 7);
+        assertFalse(board.isValid());
+        // next to a submarine and diagonal to a cruiser, each contact counted from both sides
+        assertEquals(4, board.conflicts());
+        assertFalse(BattleField.fieldValidator(board.toField()));
+
+        submarine = board.move(submarine, 9, 9);
+        assertTrue(board.isValid());
+
+        board.place(new Ship(9, 0, 2, false));
+        assertFalse(board.isValid());
+        assertEquals(0, board.conflicts());
+        board.remove(new Ship(9, 0, 2, false));
+        board.remove(submarine);
+        board.place(new Ship(9, 9, 1, false));
+        assertTrue(board.isValid());
+    }
+
+    @Test
+    public void testInvalidEdits() {
+        BattleFieldBoard board = new BattleFieldBoard();
+        assertThrows(IllegalArgumentException.class, () -> board.place(new Ship(7, 0, 4, true)));
+        assertThrows(IllegalArgumentException.class, () -> board.place(new Ship(0, -1, 1, false)));
+        assertThrows(IllegalArgumentException.class, () -> board.remove(new Ship(0, 0, 1, false)));
+        assertThrows(IllegalArgumentException.class, () -> new Ship(0, 0, 0, false));
+        board.place(new Ship(0, 0, 4, false));
+        assertThrows(IllegalArgumentException.class, () -> board.move(new Ship(0, 0, 4, false), 0, 7));
+        board.remove(new Ship(0, 0, 4, false));
+        assertEquals(0, board.conflicts());
+    }
+
+    @Test
+    public void testMatchesRecomputation() {
+        Random random = new Random(24);
+        for (boolean diagonalContactAllowed : new boolean[]{false, true}) {
+            FleetRules rules = new FleetRules(Map.of(3, 1, 2, 2, 1, 2), diagonalContactAllowed);
+            BattleFieldBoard board = new BattleFieldBoard(7, 8, rules);
+            List<Ship> ships = new ArrayList<>();
+            int valid = 0;
+            for (int edit = 0; edit < 20_000; edit++) {
+                if (!ships.isEmpty() && random.nextInt(3) == 0) {
+                    board.remove(ships.remove(random.nextInt(ships.size())));
+                } else if (!ships.isEmpty() && ships.size() >= 5 || random.nextBoolean() && !ships.isEmpty()) {
+                    int index = random.nextInt(ships.size());
+                    Ship ship = ships.get(index);
+                    int row = random.nextInt(ship.vertical() ? 8 - ship.length() : 7);
+                    int col = random.nextInt(ship.vertical() ? 8 : 9 - ship.length());
+                    ships.set(index, board.move(ship, row, col));
+                } else {
+                    int length = 1 + random.nextInt(4);
+                    boolean vertical = random.nextBoolean();
+                    Ship ship = new Ship(random.nextInt(vertical ? 8 - length : 7), random.nextInt(vertical ? 8 : 9 - length), length, vertical);
+                    board.place(ship);
+                    ships.add(ship);
+                }
+                boolean expected = isValid(ships, rules);
+                assertEquals(expected, board.isValid(), ships::toString);
+                if (expected) {
+                    assertTrue(new BattleField(rules).validate(board.toField()));
+                    valid++;
+                }
+            }
+            assertTrue(valid > 10);
+        }
+    }
+
+    private static boolean isValid(List<Ship> ships, FleetRules rules) {
+        Map<Integer, Integer> lengths = new HashMap<>();
+        for (int a = 0; a < ships.size(); a++) {
+            lengths.merge(ships.get(a).length(), 1, Integer::sum);
+            for (int b = a + 1; b < ships.size(); b++) {
+                if (touch(ships.get(a), ships.get(b), rules.diagonalContactAllowed())) {
+                    return false;
+                }
+            }
+        }
+        return lengths.equals(rules.shipCounts());
+    }
+
+    private static boolean touch(Ship first, Ship second, boolean diagonalContactAllowed) {
+        for (int k = 0; k < first.length(); k++) {
+            for (int l = 0; l < second.length(); l++) {
+                int rows = Math.abs(first.row() + (first.vertical() ? k : 0) - second.row() - (second.vertical() ? l : 0));
+                int cols = Math.abs(first.col() + (first.vertical() ? 0 : k) - second.col() - (second.vertical() ? 0 : l));
+                if (diagonalContactAllowed ? rows + cols <= 1 : rows <= 1 && cols <= 1) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
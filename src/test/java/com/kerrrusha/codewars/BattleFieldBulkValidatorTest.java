@@ -0,0 +1,128 @@
+package com.kerrrusha.codewars;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BattleFieldBulkValidatorTest {
+
+    private static final int[][] battleField = {
+            {1, 0, 0, 0, 0, 1, 1, 0, 0, 0},
+            {1, 0, 1, 0, 0, 0, 0, 0, 1, 0},
+            {1, 0, 1, 0, 1, 1, 1, 0, 1, 0},
+            {1, 0, 0, 0, 0, 0, 0, 0, 0, 0},
+            {0, 0, 0, 0, 0, 0, 0, 0, 1, 0},
+            {0, 0, 0, 0, 1, 1, 1, 0, 0, 0},
+            {0, 0, 0, 0, 0, 0, 0, 0, 1, 0},
+            {0, 0, 0, 1, 0, 0, 0, 0, 0, 0},
+            {0, 0, 0, 0, 0, 0, 0, 1, 0, 0},
+            {0, 0, 0, 0, 0, 0, 0, 0, 0, 1}
+    };
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testBitmapAcrossChunksAndWindows() throws IOException {
+        Random random = new Random(23);
+        List<int[][]> boards = new ArrayList<>();
+        for (int i = 0; i < 1003; i++) {
+            int[][] board = copy(battleField);
+            board[9][9] = 0;
+            for (int flips = random.nextInt(3); flips > 0; flips--) {
+                board[random.nextInt(10)][random.nextInt(10)] ^= 1;
+            }
+            boards.add(board);
+        }
+        Path input = write(boards);
+        Path bitmap = directory.resolve("valid.bitmap");
+
+        BattleFieldBulkValidator.Summary summary =
+                new BattleFieldBulkValidator(FleetRules.CLASSIC, ForkJoinPool.commonPool(), 64, 16).validate(input, bitmap);
+
+        byte[] bits = Files.readAllBytes(bitmap);
+        assertEquals(1003, summary.boards());
+        assertEquals(126, bits.length);
+        long valid = 0;
+        for (int i = 0; i < boards.size(); i++) {
+            boolean expected = BattleField.fieldValidator(boards.get(i));
+            assertEquals(expected, (bits[i / 8] >>> i % 8 & 1) == 1, "board " + i);
+            valid += expected ? 1 : 0;
+        }
+        assertEquals(valid, summary.valid());
+        assertTrue(valid > 100);
+        assertTrue(summary.boardsPerSecond() > 0);
+    }
+
+    @Test
+    public void testConfiguredRules() throws IOException {
+        FleetRules rules = new FleetRules(Map.of(4, 1, 3, 2, 2, 3, 1, 5), false);
+        Path input = write(List.of(battleField, battleField));
+        Path bitmap = directory.resolve("valid.bitmap");
+        assertEquals(2, new BattleFieldBulkValidator(rules).validate(input, bitmap).valid());
+        assertEquals(0, new BattleFieldBulkValidator().validate(input, bitmap).valid());
+        assertArrayEquals(new byte[]{0}, Files.readAllBytes(bitmap));
+    }
+
+    @Test
+    public void testRulesEqualToClassic() throws IOException {
+        FleetRules rules = new FleetRules(Map.of(1, 4, 2, 3, 3, 2, 4, 1), false);
+        BattleFieldBulkValidator validator = new BattleFieldBulkValidator(rules);
+        assertTrue(validator.usesBitboard());
+        assertFalse(new BattleFieldBulkValidator(new FleetRules(Map.of(1, 4, 2, 3, 3, 2, 4, 1), true)).usesBitboard());
+
+        int[][] valid = copy(battleField);
+        valid[9][9] = 0;
+        Path input = write(List.of(valid, battleField));
+        assertEquals(1, validator.validate(input, directory.resolve("valid.bitmap")).valid());
+    }
+
+    @Test
+    public void testPaddingBitsMakeBoardInvalid() throws IOException {
+        int[][] valid = copy(battleField);
+        valid[9][9] = 0;
+        byte[] packed = BattleFieldBulkValidator.pack(valid);
+        packed[12] |= (byte) 0x10;
+        Path input = Files.write(directory.resolve("boards.bin"), packed);
+        assertEquals(0, new BattleFieldBulkValidator().validate(input, directory.resolve("valid.bitmap")).valid());
+        packed[12] &= (byte) ~0x10;
+        Files.write(input, packed);
+        assertEquals(1, new BattleFieldBulkValidator().validate(input, directory.resolve("valid.bitmap")).valid());
+    }
+
+    @Test
+    public void testPartialBoard() throws IOException {
+        Path input = Files.write(directory.resolve("boards.bin"), new byte[BattleFieldBulkValidator.BOARD_BYTES + 1]);
+        assertThrows(IllegalArgumentException.class,
+                () -> new BattleFieldBulkValidator().validate(input, directory.resolve("valid.bitmap")));
+    }
+
+    private Path write(List<int[][]> boards) throws IOException {
+        Path input = directory.resolve("boards.bin");
+        try (OutputStream out = Files.newOutputStream(input)) {
+            for (int[][] board : boards) {
+                out.write(BattleFieldBulkValidator.pack(board));
+            }
+        }
+        return input;
+    }
+
+    private static int[][] copy(int[][] board) {
+        int[][] copy = new int[board.length][];
+        for (int i = 0; i < board.length; i++) {
+            copy[i] = board[i].clone();
+        }
+        return copy;
+    }
+}
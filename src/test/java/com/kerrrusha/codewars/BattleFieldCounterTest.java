@@ -0,0 +1,115 @@
+package com.kerrrusha.codewars;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BattleFieldCounterTest {
+
+    @Test
+    public void testMatchesBruteForce() {
+        assertCountMatchesBruteForce(4, 5, Map.of(2, 1, 1, 2));
+        assertCountMatchesBruteForce(4, 5, Map.of(1, 1, 2, 1, 3, 1));
+        assertCountMatchesBruteForce(5, 4, Map.of(1, 3, 3, 1));
+        assertCountMatchesBruteForce(4, 4, Map.of(2, 1, 4, 1));
+        assertCountMatchesBruteForce(3, 6, Map.of(1, 2, 2, 1, 3, 1));
+        assertCountMatchesBruteForce(2, 3, Map.of());
+    }
+
+    @Test
+    public void testClassicFleetNeedsRoom() {
+        BattleFieldCounter counter = new BattleFieldCounter(6, 6, FleetRules.CLASSIC);
+        assertEquals(0, counter.count());
+        assertThrows(IllegalStateException.class, () -> counter.sample(new Random(25)));
+    }
+
+    @Test
+    public void testTransposedBoard() {
+        FleetRules rules = new FleetRules(Map.of(1, 2, 2, 1, 3, 1), false);
+        long count = new BattleFieldCounter(5, 8, rules).count();
+        assertTrue(count > 0);
+        assertEquals(count, new BattleFieldCounter(8, 5, rules).count());
+    }
+
+    @Test
+    public void testParallelMatchesSequential() {
+        FleetRules rules = new FleetRules(Map.of(1, 3, 2, 2, 3, 1), false);
+        ForkJoinPool sequential = new ForkJoinPool(1);
+        ForkJoinPool parallel = new ForkJoinPool(4);
+        try {
+            assertEquals(new BattleFieldCounter(9, 9, rules, sequential).count(),
+                    new BattleFieldCounter(9, 9, rules, parallel).count());
+        } finally {
+            sequential.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    public void testUnsupportedRules() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new BattleFieldCounter(5, 5, new FleetRules(Map.of(1, 2), true)));
+        assertThrows(IllegalArgumentException.class,
+                () -> new BattleFieldCounter(10, 10, new FleetRules(Map.of(7, 1), false)));
+        assertThrows(IllegalStateException.class,
+                () -> new BattleFieldCounter(3, 3, FleetRules.CLASSIC).sample(new Random(25)));
+    }
+
+    @Test
+    public void testSamplesUniformly() {
+        FleetRules rules = new FleetRules(Map.of(2, 1, 1, 1), false);
+        List<String> boards = validBoards(3, 4, rules);
+        assertEquals(boards.size(), new BattleFieldCounter(3, 4, rules).count());
+
+        BattleFieldCounter counter = new BattleFieldCounter(3, 4, rules);
+        Random random = new Random(25);
+        Map<String, Integer> drawn = new HashMap<>();
+        int samplesPerBoard = 400;
+        for (int i = 0; i < boards.size() * samplesPerBoard; i++) {
+            drawn.merge(Arrays.deepToString(counter.sample(random)), 1, Integer::sum);
+        }
+        assertEquals(boards.size(), drawn.size());
+        assertTrue(boards.containsAll(drawn.keySet()));
+        for (String board : boards) {
+            int count = drawn.getOrDefault(board, 0);
+            assertTrue(Math.abs(count - samplesPerBoard) < samplesPerBoard / 4, board + " drawn " + count + " times");
+        }
+    }
+
+    @Test
+    public void testSamplesClassicBoards() {
+        BattleFieldCounter counter = new BattleFieldCounter();
+        Random random = new Random(25);
+        for (int i = 0; i < 200; i++) {
+            assertTrue(BattleField.fieldValidator(counter.sample(random)));
+        }
+    }
+
+    private static void assertCountMatchesBruteForce(int rows, int cols, Map<Integer, Integer> ships) {
+        FleetRules rules = new FleetRules(ships, false);
+        assertEquals(validBoards(rows, cols, rules).size(), new BattleFieldCounter(rows, cols, rules).count(), rules::toString);
+    }
+
+    private static List<String> validBoards(int rows, int cols, FleetRules rules) {
+        BattleField validator = new BattleField(rules);
+        List<String> boards = new ArrayList<>();
+        int[][] board = new int[rows][cols];
+        for (long cells = 0; cells < 1L << rows * cols; cells++) {
+            for (int cell = 0; cell < rows * cols; cell++) {
+                board[cell / cols][cell % cols] = (int) (cells >>> cell & 1);
+            }
+            if (validator.validate(board)) {
+                boards.add(Arrays.deepToString(board));
+            }
+        }
+        return boards;
+    }
+}
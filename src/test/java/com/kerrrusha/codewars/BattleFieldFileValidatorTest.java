@@ -0,0 +1,81 @@
+package com.kerrrusha.codewars;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BattleFieldFileValidatorTest {
+
+    private static final String BATTLE_FIELD = """
+            1 0 0 0 0 1 1 0 0 0
+            1 0 1 0 0 0 0 0 1 0
+            1 0 1 0 1 1 1 0 1 0
+            1 0 0 0 0 0 0 0 0 0
+            0 0 0 0 0 0 0 0 1 0
+            0 0 0 0 1 1 1 0 0 0
+            0 0 0 0 0 0 0 0 1 0
+            0 0 0 1 0 0 0 0 0 0
+            0 0 0 0 0 0 0 1 0 0
+            0 0 0 0 0 0 0 0 0 0
+            """;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testFile() throws IOException {
+        Path input = Files.writeString(directory.resolve("board.txt"), BATTLE_FIELD);
+        BattleFieldFileValidator.Result result = new BattleFieldFileValidator().validate(input);
+        assertTrue(result.valid());
+        assertEquals(10, result.rows());
+        assertEquals(Files.size(input), result.bytes());
+
+        Files.writeString(input, BATTLE_FIELD.replace(" ", ",").replace("\n", "\r\n") + "\n\n");
+        assertTrue(new BattleFieldFileValidator().validate(input).valid());
+        Files.writeString(input, BATTLE_FIELD.replace(" ", ""));
+        assertTrue(new BattleFieldFileValidator().validate(input).valid());
+        Files.writeString(input, BATTLE_FIELD.substring(0, BATTLE_FIELD.lastIndexOf("0 0 0 0 0 0 0 1")));
+        assertFalse(new BattleFieldFileValidator().validate(input).valid());
+    }
+
+    @Test
+    public void testRejectsBeforeEndOfStream() {
+        // two ships touching in the first rows, then a stream that never ends
+        InputStream endless = new InputStream() {
+            private final byte[] start = "1 0\n0 1\n".getBytes(StandardCharsets.US_ASCII);
+            private long position;
+
+            @Override
+            public int read() {
+                return position < start.length ? start[(int) position++] : position++ % 4 == 0 ? '\n' : '0';
+            }
+        };
+        BattleFieldFileValidator.Result result = new BattleFieldFileValidator(new FleetRules(Map.of(1, 2), false)).validate(endless);
+        assertFalse(result.valid());
+        assertEquals(2, result.rows());
+    }
+
+    @Test
+    public void testConfiguredRules() {
+        InputStream in = new ByteArrayInputStream("1 0 1\n0 1 0\n".getBytes(StandardCharsets.US_ASCII));
+        assertTrue(new BattleFieldFileValidator(new FleetRules(Map.of(1, 3), true)).validate(in).valid());
+    }
+
+    @Test
+    public void testMalformed() {
+        BattleFieldFileValidator validator = new BattleFieldFileValidator();
+        assertThrows(IllegalArgumentException.class,
+                () -> validator.validate(new ByteArrayInputStream("1 0\n0 2\n".getBytes(StandardCharsets.US_ASCII))));
+        assertThrows(IllegalArgumentException.class,
+                () -> validator.validate(new ByteArrayInputStream("1 0 0\n0 0\n".getBytes(StandardCharsets.US_ASCII))));
+    }
+}
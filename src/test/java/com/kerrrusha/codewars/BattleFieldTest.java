@@ -2,6 +2,20 @@ package com.kerrrusha.codewars;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class BattleFieldTest {
@@ -29,4 +43,279 @@ class BattleFieldTest {
         assertTrue(BattleField.fieldValidator(battleField));
     }
 
+    @Test
+    public void testInvalidShapes() {
+        int[][] lShaped = copy(battleField);
+        lShaped[1][5] = 1;
+        lShaped[2][8] = 0;
+        assertFalse(BattleField.fieldValidator(lShaped));
+
+        int[][] tShaped = copy(battleField);
+        tShaped[6][5] = 1;
+        tShaped[8][7] = 0;
+        assertFalse(BattleField.fieldValidator(tShaped));
+
+        int[][] verticalTooLong = copy(battleField);
+        verticalTooLong[4][0] = 1;
+        verticalTooLong[8][7] = 0;
+        assertFalse(BattleField.fieldValidator(verticalTooLong));
+
+        int[][] extraSubmarine = copy(battleField);
+        extraSubmarine[9][0] = 1;
+        assertFalse(BattleField.fieldValidator(extraSubmarine));
+
+        int[][] shipOnLastRow = copy(battleField);
+        shipOnLastRow[8][7] = 0;
+        shipOnLastRow[9][4] = 1;
+        assertTrue(BattleField.fieldValidator(shipOnLastRow));
+        shipOnLastRow[8][4] = 1;
+        shipOnLastRow[6][8] = 0;
+        assertFalse(BattleField.fieldValidator(shipOnLastRow));
+    }
+
+    @Test
+    public void testConfigurableFleet() {
+        BattleField validator = new BattleField(new FleetRules(Map.of(5, 1, 1, 2), false));
+        int[][] board = {
+                {1, 1, 1, 1, 1, 0},
+                {0, 0, 0, 0, 0, 0},
+                {1, 0, 0, 0, 0, 1},
+        };
+        assertTrue(validator.validate(board));
+        board[2][5] = 0;
+        assertFalse(validator.validate(board));
+        board[2][4] = 1;
+        assertTrue(validator.validate(board));
+        board[2][1] = 1;
+        assertFalse(validator.validate(board));
+        assertFalse(BattleField.fieldValidator(board));
+    }
+
+    @Test
+    public void testDiagonalContactAllowed() {
+        FleetRules rules = new FleetRules(Map.of(3, 1, 2, 1, 1, 1), true);
+        int[][] touchingCorners = {
+                {1, 1, 1, 0},
+                {0, 0, 0, 1},
+                {0, 0, 1, 1},
+        };
+        assertFalse(new BattleField(rules).validate(touchingCorners));
+        touchingCorners[2][3] = 0;
+        touchingCorners[2][1] = 1;
+        assertTrue(new BattleField(rules).validate(touchingCorners));
+        assertFalse(new BattleField(new FleetRules(rules.shipCounts(), false)).validate(touchingCorners));
+
+        int[][] bent = {
+                {1, 1, 0},
+                {1, 0, 0},
+        };
+        assertFalse(new BattleField(new FleetRules(Map.of(3, 1), true)).validate(bent));
+        assertFalse(new BattleField(new FleetRules(Map.of(2, 1, 1, 1), true)).validate(bent));
+    }
+
+    @Test
+    public void testRulesMatchFloodFill() {
+        Random random = new Random(21);
+        for (int i = 0; i < 5_000; i++) {
+            int[][] board = new int[1 + random.nextInt(7)][1 + random.nextInt(7)];
+            for (int[] row : board) {
+                for (int j = 0; j < row.length; j++) {
+                    row[j] = random.nextInt(4) == 0 ? 1 : 0;
+                }
+            }
+            boolean diagonalContactAllowed = random.nextBoolean();
+            Map<Integer, Integer> ships = shipsByFloodFill(board, diagonalContactAllowed);
+            if (ships == null) {
+                assertFalse(new BattleField(new FleetRules(Map.of(1, 1), diagonalContactAllowed)).validate(board));
+                continue;
+            }
+            FleetRules rules = new FleetRules(ships, diagonalContactAllowed);
+            assertTrue(new BattleField(rules).validate(board), rules::toString);
+            if (!ships.isEmpty()) {
+                Map<Integer, Integer> oneShipLess = new HashMap<>(ships);
+                oneShipLess.merge(ships.keySet().iterator().next(), -1, Integer::sum);
+                assertFalse(new BattleField(new FleetRules(oneShipLess, diagonalContactAllowed)).validate(board));
+            }
+        }
+    }
+
+    @Test
+    public void testLargeBoard() {
+        int size = 2_000;
+        int[][] board = new int[size][size];
+        Map<Integer, Integer> ships = new HashMap<>();
+        int length = 0;
+        // horizontal ships on every third row and vertical ones in the last column pair, lengths cycling 1..500
+        for (int i = 0; i < size; i += 3) {
+            for (int j = 0; j + length + 1 < size - 2; j += length + 2) {
+                length = length % 500 + 1;
+                if (j + length >= size - 2) {
+                    break;
+                }
+                Arrays.fill(board[i], j, j + length, 1);
+                ships.merge(length, 1, Integer::sum);
+            }
+        }
+        for (int i = 0; i + 1000 <= size; i += 1001) {
+            for (int k = 0; k < 1000; k++) {
+                board[i + k][size - 1] = 1;
+            }
+            ships.merge(1000, 1, Integer::sum);
+        }
+        BattleField validator = new BattleField(new FleetRules(ships, false));
+        assertTrue(validator.validate(board));
+        board[size - 1][size - 1] = 1;
+        assertFalse(validator.validate(board));
+    }
+
+    // Ships as the 4-connected groups of cells; null if a group is not a straight line or, unless allowed,
+    // groups touch at a corner.
+    private static Map<Integer, Integer> shipsByFloodFill(int[][] board, boolean diagonalContactAllowed) {
+        int rows = board.length;
+        int cols = board[0].length;
+        int[][] group = new int[rows][cols];
+        Map<Integer, Integer> ships = new HashMap<>();
+        int groups = 0;
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (board[i][j] != 1 || group[i][j] != 0) {
+                    continue;
+                }
+                groups++;
+                Deque<int[]> toVisit = new ArrayDeque<>();
+                toVisit.push(new int[]{i, j});
+                group[i][j] = groups;
+                Set<Integer> groupRows = new HashSet<>();
+                Set<Integer> groupCols = new HashSet<>();
+                int cells = 0;
+                while (!toVisit.isEmpty()) {
+                    int[] cell = toVisit.pop();
+                    cells++;
+                    groupRows.add(cell[0]);
+                    groupCols.add(cell[1]);
+                    for (int[] step : new int[][]{{1, 0}, {-1, 0}, {0, 1}, {0, -1}}) {
+                        int a = cell[0] + step[0];
+                        int b = cell[1] + step[1];
+                        if (a >= 0 && a < rows && b >= 0 && b < cols && board[a][b] == 1 && group[a][b] == 0) {
+                            group[a][b] = groups;
+                            toVisit.push(new int[]{a, b});
+                        }
+                    }
+                }
+                if (groupRows.size() > 1 && groupCols.size() > 1) {
+                    return null;
+                }
+                ships.merge(cells, 1, Integer::sum);
+            }
+        }
+        if (!diagonalContactAllowed) {
+            for (int i = 0; i + 1 < rows; i++) {
+                for (int j = 0; j < cols; j++) {
+                    if (group[i][j] == 0) {
+                        continue;
+                    }
+                    if (j > 0 && group[i + 1][j - 1] != 0 && group[i + 1][j - 1] != group[i][j]
+                            || j + 1 < cols && group[i + 1][j + 1] != 0 && group[i + 1][j + 1] != group[i][j]) {
+                        return null;
+                    }
+                }
+            }
+        }
+        return ships;
+    }
+
+    @Test
+    public void testRowStreaming() {
+        BattleField validator = new BattleField();
+        int[] row = new int[10];
+        validator.begin(10);
+        for (int[] boardRow : battleField) {
+            System.arraycopy(boardRow, 0, row, 0, 10);
+            assertTrue(validator.offer(row));
+        }
+        assertTrue(validator.finish());
+
+        int[][] touching = copy(battleField);
+        touching[4][7] = 1;
+        validator.begin(10);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(validator.offer(touching[i]));
+        }
+        assertFalse(validator.offer(touching[4]));
+        assertFalse(validator.offer(touching[5]));
+        assertFalse(validator.finish());
+
+        validator.begin(10);
+        assertThrows(IllegalArgumentException.class, () -> validator.offer(new int[9]));
+    }
+
+    @Test
+    public void testRaggedRows() {
+        BattleField validator = new BattleField();
+        int[][] ragged = copy(battleField);
+        ragged[6] = Arrays.copyOf(ragged[6], 9);
+        assertThrows(IllegalArgumentException.class, () -> validator.validate(ragged));
+
+        ragged[0][1] = 1;
+        assertThrows(IllegalArgumentException.class, () -> validator.validate(ragged));
+        validator.begin(10);
+        assertTrue(validator.offer(ragged[0]));
+        assertFalse(validator.offer(ragged[1]));
+        assertThrows(IllegalArgumentException.class, () -> validator.offer(ragged[6]));
+
+        assertFalse(validator.validate(new int[0][]));
+    }
+
+    @Test
+    public void testFromManyThreads() throws Exception {
+        int[][] touching = copy(battleField);
+        touching[4][7] = 1;
+        int[][] missingSubmarine = copy(battleField);
+        missingSubmarine[8][7] = 0;
+        int[][] tooLong = copy(battleField);
+        tooLong[4][0] = 1;
+        List<int[][]> boards = List.of(battleField, touching, missingSubmarine, tooLong);
+        List<Boolean> expected = List.of(true, false, false, false);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = executor.invokeAll(Collections.nCopies(8, () -> {
+                for (int i = 0; i < 20_000; i++) {
+                    int board = i % boards.size();
+                    if (BattleField.fieldValidator(boards.get(board)) != expected.get(board)) {
+                        return false;
+                    }
+                }
+                return true;
+            }));
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testInstanceReusedForDifferentSizes() {
+        BattleField validator = new BattleField();
+        int[][] wider = new int[10][12];
+        for (int i = 0; i < 10; i++) {
+            System.arraycopy(battleField[i], 0, wider[i], 0, 10);
+        }
+        assertTrue(validator.validate(battleField));
+        assertTrue(validator.validate(wider));
+        wider[3][11] = 1;
+        assertFalse(validator.validate(wider));
+        assertTrue(validator.validate(battleField));
+    }
+
+    private static int[][] copy(int[][] board) {
+        int[][] copy = new int[board.length][];
+        for (int i = 0; i < board.length; i++) {
+            copy[i] = board[i].clone();
+        }
+        return copy;
+    }
+
 }
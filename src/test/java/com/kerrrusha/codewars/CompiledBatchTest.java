@@ -0,0 +1,80 @@
+package com.kerrrusha.codewars;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledBatchTest {
+
+    @Test
+    public void testSharesEqualSubExpressions() {
+        CompiledBatch batch = MathEvaluator.compileAll(List.of("(1 + 2) * 3", "3 * (2 + 1)", "(1 + 2) * 3 - 4"));
+
+        assertEquals(7, batch.nodes());
+        assertEquals(10, batch.deduplicatedNodes());
+        assertArrayEquals(new double[]{9, 9, 5}, batch.evaluate().values(), 0.01);
+    }
+
+    @Test
+    public void testKeepsOrderOfNonCommutativeOperations() {
+        CompiledBatch batch = MathEvaluator.compileAll(List.of("a - b", "b - a", "a / b", "b / a", "-a", "-b"));
+
+        assertEquals(8, batch.nodes());
+        assertEquals(8, batch.deduplicatedNodes());
+        assertEquals(List.of("a", "b"), batch.variables());
+        assertArrayEquals(new double[]{-2, 2, 0.5, 2, -2, -4}, batch.evaluate(2, 4).values(), 0.01);
+    }
+
+    @Test
+    public void testMatchesCalculate() {
+        List<String> shared = List.of("(2.5 * 4 - 1)", "(3 / (7 - 2))", "(-(1 + 1) * 8)", "(0.1 + 0.2)");
+        List<String> expressions = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            expressions.add(shared.get(i % 4) + " * " + (i % 10) + " - " + shared.get(i % 3) + " / " + shared.get((i + 1) % 4));
+        }
+        CompiledBatch batch = MathEvaluator.compileAll(expressions);
+
+        MathEvaluator evaluator = new MathEvaluator();
+        double[] values = batch.evaluate().values();
+        for (int i = 0; i < expressions.size(); i++) {
+            assertEquals(evaluator.calculate(expressions.get(i)), values[i]);
+        }
+        assertTrue(batch.deduplicatedNodes() > 100 * batch.nodes());
+    }
+
+    @Test
+    public void testFailures() {
+        CompiledBatch batch = MathEvaluator.compileAll(List.of("1 + 1", "x * (2", "1 + 1 + y)", "2 * 2"));
+
+        MathEvaluator.BatchResult result = batch.evaluate();
+        assertEquals(List.of(), batch.variables());
+        assertEquals(4, batch.size());
+        assertTrue(result.failed(1));
+        assertTrue(result.failed(2));
+        assertEquals(2, result.values()[0], 0.01);
+        assertTrue(Double.isNaN(result.values()[1]));
+        assertEquals(4, result.values()[3], 0.01);
+        assertEquals(4, batch.nodes());
+    }
+
+    @Test
+    public void testReusesGroupsByText() {
+        String group = "(1.5 * 2 + 3 / 4 - 5)";
+        CompiledBatch batch = MathEvaluator.compileAll(List.of(
+                group + " * y +",
+                group + " * 2",
+                "-" + group + " / " + group,
+                "(1.5*2+3/4-5) - 1"));
+
+        MathEvaluator.BatchResult result = batch.evaluate();
+        assertTrue(result.failed(0));
+        assertEquals(List.of(), batch.variables());
+        assertArrayEquals(new double[]{-2.5, -1, -2.25}, Arrays.copyOfRange(result.values(), 1, 4), 0.01);
+        assertEquals(14, batch.nodes());
+        assertEquals(28, batch.deduplicatedNodes());
+    }
+}
@@ -0,0 +1,63 @@
+package com.kerrrusha.codewars;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpressionFileEvaluatorTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testLinesAcrossChunksAndWindows() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            lines.add(i % 997 == 0 ? "(" + i : "(" + i + " - 1) * 2");
+        }
+        Path input = Files.write(directory.resolve("input.txt"), lines);
+        Path output = directory.resolve("output.txt");
+
+        ExpressionFileEvaluator.Summary summary =
+                new ExpressionFileEvaluator(new MathEvaluator(), ForkJoinPool.commonPool(), 4096, 512).evaluate(input, output);
+
+        List<String> results = Files.readAllLines(output);
+        assertEquals(5000, summary.lines());
+        assertEquals(6, summary.failures());
+        assertEquals(5000, results.size());
+        for (int i = 0; i < 5000; i++) {
+            if (i % 997 == 0) {
+                assertTrue(results.get(i).startsWith("ERROR "));
+            } else {
+                assertEquals((i - 1) * 2, Double.parseDouble(results.get(i)), 0.01);
+            }
+        }
+    }
+
+    @Test
+    public void testLastLineWithoutSeparator() throws IOException {
+        Path input = Files.writeString(directory.resolve("input.txt"), "1 + 1\r\n2 * 3");
+        Path output = directory.resolve("output.txt");
+
+        new ExpressionFileEvaluator(new MathEvaluator()).evaluate(input, output);
+
+        assertEquals(List.of("2.0", "6.0"), Files.readAllLines(output));
+    }
+
+    @Test
+    public void testLineLongerThanWindow() throws IOException {
+        Path input = Files.writeString(directory.resolve("input.txt"), "1 + 1\n" + "1 + ".repeat(100) + "1\n");
+        Path output = directory.resolve("output.txt");
+
+        ExpressionFileEvaluator evaluator = new ExpressionFileEvaluator(new MathEvaluator(), ForkJoinPool.commonPool(), 64, 16);
+        assertThrows(IllegalStateException.class, () -> evaluator.evaluate(input, output));
+    }
+}
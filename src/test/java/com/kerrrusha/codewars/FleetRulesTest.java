@@ -0,0 +1,42 @@
+package com.kerrrusha.codewars;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FleetRulesTest {
+
+    @Test
+    public void testClassic() {
+        assertEquals(Map.of(1, 4, 2, 3, 3, 2, 4, 1), FleetRules.CLASSIC.shipCounts());
+        assertEquals(4, FleetRules.CLASSIC.maxShipLength());
+        assertEquals(0, FleetRules.CLASSIC.shipCount(5));
+        assertFalse(FleetRules.CLASSIC.diagonalContactAllowed());
+    }
+
+    @Test
+    public void testLengthsWithoutShipsAreDropped() {
+        FleetRules rules = new FleetRules(Map.of(7, 0, 2, 5), true);
+        assertEquals(2, rules.maxShipLength());
+        assertEquals(Map.of(2, 5), rules.shipCounts());
+        assertTrue(rules.diagonalContactAllowed());
+    }
+
+    @Test
+    public void testEquality() {
+        FleetRules classic = new FleetRules(Map.of(1, 4, 2, 3, 3, 2, 4, 1, 5, 0), false);
+        assertEquals(FleetRules.CLASSIC, classic);
+        assertEquals(FleetRules.CLASSIC.hashCode(), classic.hashCode());
+        assertNotEquals(FleetRules.CLASSIC, new FleetRules(Map.of(1, 4, 2, 3, 3, 2, 4, 1), true));
+        assertNotEquals(FleetRules.CLASSIC, new FleetRules(Map.of(1, 4, 2, 3, 3, 2), false));
+    }
+
+    @Test
+    public void testInvalidRules() {
+        assertThrows(IllegalArgumentException.class, () -> new FleetRules(Map.of(0, 1), false));
+        assertThrows(IllegalArgumentException.class, () -> new FleetRules(Map.of(FleetRules.MAX_SHIP_LENGTH + 1, 1), false));
+        assertThrows(IllegalArgumentException.class, () -> new FleetRules(Map.of(2, -1), false));
+    }
+}
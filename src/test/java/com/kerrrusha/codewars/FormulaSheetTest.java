@@ -0,0 +1,90 @@
+package com.kerrrusha.codewars;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FormulaSheetTest {
+
+    @Test
+    public void testRecalculatesOnlyDownstream() {
+        FormulaSheet sheet = new FormulaSheet();
+        sheet.set("price", 100);
+        sheet.set("tax", 0.2);
+        sheet.set("discount", 10);
+        sheet.define("gross = price * (1 + tax)");
+        sheet.define("total = gross - discount");
+        sheet.define("unrelated = discount * 2");
+        assertEquals(110, sheet.get("total"), 0.01);
+
+        sheet.set("tax", 0.5);
+
+        assertEquals(140, sheet.get("total"), 0.01);
+        assertEquals(3, sheet.lastRecalculated());
+    }
+
+    @Test
+    public void testUndefinedNames() {
+        FormulaSheet sheet = new FormulaSheet();
+        sheet.define("a = b + 1");
+        assertThrows(IllegalArgumentException.class, () -> sheet.get("a"));
+        assertThrows(IllegalArgumentException.class, () -> sheet.get("b"));
+
+        sheet.set("b", 1e-5);
+
+        assertEquals(1.00001, sheet.get("a"), 1e-9);
+    }
+
+    @Test
+    public void testRejectsCycles() {
+        FormulaSheet sheet = new FormulaSheet();
+        sheet.define("a = b + 1");
+        sheet.define("b = c * 2");
+        sheet.set("c", 3);
+        assertThrows(IllegalArgumentException.class, () -> sheet.define("c = a - 1"));
+        assertThrows(IllegalArgumentException.class, () -> sheet.define("a = a"));
+        assertEquals(7, sheet.get("a"), 0.01);
+    }
+
+    @Test
+    public void testRejectedCycleLeavesSheetUnchanged() {
+        FormulaSheet sheet = new FormulaSheet();
+        sheet.define("a = b + 1");
+        sheet.set("b", 2);
+        Set<String> names = sheet.names();
+
+        assertThrows(IllegalArgumentException.class, () -> sheet.define("b = a + fresh"));
+        assertThrows(IllegalArgumentException.class, () -> sheet.define("n = n + other"));
+
+        assertEquals(names, sheet.names());
+        assertEquals(3, sheet.get("a"), 0.01);
+        sheet.set("b", 5);
+        assertEquals(6, sheet.get("a"), 0.01);
+        assertEquals(2, sheet.lastRecalculated());
+    }
+
+    @Test
+    public void testWideAndDeepGraph() {
+        FormulaSheet sheet = new FormulaSheet();
+        sheet.set("x", 1);
+        for (int i = 0; i < 10_000; i++) {
+            sheet.define("c" + i, "x * " + i);
+        }
+        StringBuilder sum = new StringBuilder("0");
+        for (int i = 0; i < 10_000; i++) {
+            sum.append(" + c").append(i);
+        }
+        sheet.define("sum", sum.toString());
+        sheet.define("chain0 = sum");
+        for (int i = 1; i < 1000; i++) {
+            sheet.define("chain" + i, "chain" + (i - 1) + " + 1");
+        }
+
+        sheet.set("x", 2);
+
+        assertEquals(2 * 49_995_000d + 999, sheet.get("chain999"), 0.01);
+        assertEquals(1 + 10_000 + 1 + 1000, sheet.lastRecalculated());
+    }
+}
@@ -0,0 +1,102 @@
+package com.kerrrusha.codewars;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncrementalExpressionTest {
+
+    @Test
+    public void testEditInsideGroup() {
+        IncrementalExpression expression = new IncrementalExpression("(20 / (1.5 + 3.5) * 4 + (0 + 4)) - -6");
+        assertEquals(26, expression.value(), 0.01);
+
+        expression.edit(7, 3, "6.5");
+        assertEquals("(20 / (6.5 + 3.5) * 4 + (0 + 4)) - -6", expression.text());
+        assertEquals(18, expression.value(), 0.01);
+        assertEquals(9, expression.lastScannedCharacters());
+    }
+
+    @Test
+    public void testUnbalancedWhileTyping() {
+        IncrementalExpression expression = new IncrementalExpression("2 * 3");
+        expression.edit(4, 0, "(");
+        assertThrows(IllegalStateException.class, expression::value);
+        expression.edit(5, 0, "1 +");
+        assertThrows(IllegalStateException.class, expression::value);
+        expression.edit(8, 0, " 2)");
+        assertEquals("2 * (1 + 2)3", expression.text());
+        assertThrows(IllegalStateException.class, expression::value);
+        expression.edit(11, 1, "");
+        assertEquals(6, expression.value(), 0.01);
+    }
+
+    @Test
+    public void testEditDeepInsideLongExpression() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            text.append("(").append(i).append(" * 2) + ");
+        }
+        text.append("((1 + (2 * 3)) - 4)");
+        IncrementalExpression expression = new IncrementalExpression(text);
+        int offset = text.indexOf("(2 * 3)") + 1;
+
+        expression.edit(offset, 1, "5");
+
+        assertEquals(new MathEvaluator().calculate(expression.text()), expression.value(), 0.01);
+        assertEquals(5, expression.lastScannedCharacters());
+    }
+
+    @Test
+    public void testNamesDoNotBindToGroups() {
+        // with "_0" naming the first group of the level, this would silently evaluate to 5 + 5
+        IncrementalExpression expression = new IncrementalExpression("(5) + _0");
+        assertThrows(IllegalArgumentException.class, expression::value);
+        assertThrows(RuntimeException.class, () -> new MathEvaluator().calculate(expression.text()));
+
+        expression.edit(6, 2, "1");
+        assertEquals(6, expression.value(), 0.01);
+        expression.edit(1, 1, "2 * _1");
+        assertThrows(IllegalArgumentException.class, expression::value);
+        expression.edit(5, 2, "x");
+        assertThrows(IllegalArgumentException.class, expression::value);
+        expression.edit(5, 1, "3");
+        assertEquals("(2 * 3) + 1", expression.text());
+        assertEquals(7, expression.value(), 0.01);
+    }
+
+    @Test
+    public void testRandomEditsMatchFullEvaluation() {
+        Random random = new Random(7);
+        String alphabet = "0123456789+-*/() .";
+        IncrementalExpression expression = new IncrementalExpression("(1 + 2) * (3 - (4 / 5))");
+        for (int i = 0; i < 20_000; i++) {
+            String text = expression.text();
+            int offset = random.nextInt(text.length() + 1);
+            int removed = random.nextInt(Math.min(3, text.length() - offset) + 1);
+            StringBuilder inserted = new StringBuilder();
+            for (int j = random.nextInt(3); j > 0; j--) {
+                inserted.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            if (text.length() > 60) {
+                inserted.setLength(0);
+            }
+            expression.edit(offset, removed, inserted);
+
+            double expected;
+            try {
+                expected = new MathEvaluator().calculate(expression.text());
+            } catch (RuntimeException e) {
+                assertThrows(RuntimeException.class, expression::value, expression.text());
+                continue;
+            }
+            if (Double.isFinite(expected)) {
+                assertEquals(expected, expression.value(), 1e-9 * Math.max(1, Math.abs(expected)), expression.text());
+            } else {
+                assertEquals(expected, expression.value(), expression.text());
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.kerrrusha.codewars;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+import java.util.function.ToDoubleFunction;
+
+// Run with: java -cp target/classes:target/test-classes com.kerrrusha.codewars.MathEvaluatorBenchmark
+class MathEvaluatorBenchmark {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final int CALLS_PER_ROUND = 10_000_000;
+
+    public static void main(String[] args) {
+        benchmarkSpecialized();
+        benchmarkParallel();
+        benchmarkSharedBatch();
+        benchmarkDecimal();
+    }
+
+    private static void benchmarkSpecialized() {
+        CompiledExpression compiled = MathEvaluator.compile("(a - b) / (c * 2) + a * a - b / 3 + (c - 1) * (a + b) - -c / 7.5");
+        ToDoubleFunction<double[]> specialized = compiled.specialize();
+        double[] values = {3.5, 1.25, 4};
+
+        double interpreted = measure("interpreted", () -> compiled.evaluate(values));
+        double bytecode = measure("bytecode", () -> specialized.applyAsDouble(values));
+        System.out.printf("bytecode speed-up: %.1fx%n", interpreted / bytecode);
+    }
+
+    private static void benchmarkParallel() {
+        StringBuilder expression = new StringBuilder("0");
+        for (int i = 1; i <= 2_000_000; i++) {
+            expression.append(i % 2 == 0 ? " + " : " - ").append(i % 1000).append(" * ").append(i % 7).append(".5");
+        }
+        String sum = expression.toString();
+        MathEvaluator sequential = new MathEvaluator();
+        MathEvaluator parallel = new MathEvaluator();
+        parallel.setParallelThreshold(1 << 16);
+
+        double sequentialMillis = measureOnce("sequential", () -> sequential.calculate(sum));
+        double parallelMillis = measureOnce("parallel", () -> parallel.calculate(sum));
+        System.out.printf("parallel speed-up on %d characters: %.1fx%n", sum.length(), sequentialMillis / parallelMillis);
+    }
+
+    private static void benchmarkSharedBatch() {
+        List<String> shared = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            StringBuilder subExpression = new StringBuilder("(").append(i);
+            for (int j = 1; j < 50; j++) {
+                subExpression.append(j % 2 == 0 ? " + " : " * ").append("(").append(i + j).append(" / 3 - 1.5)");
+            }
+            shared.add(subExpression.append(")").toString());
+        }
+        List<String> batch = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            batch.add(shared.get(i % 20) + " * " + (i % 100) + " - " + shared.get((i * 7) % 20) + " / " + shared.get((i * 3) % 20));
+        }
+        MathEvaluator evaluator = new MathEvaluator();
+        CompiledBatch compiled = MathEvaluator.compileAll(batch);
+        System.out.printf("shared batch: %d distinct nodes, %d deduplicated%n", compiled.nodes(), compiled.deduplicatedNodes());
+
+        double independentMillis = measureOnce("independent", () -> {
+            double sum = 0;
+            for (String expression : batch) {
+                sum += evaluator.calculate(expression);
+            }
+            return sum;
+        });
+        double compiledMillis = measureOnce("compileAll", () -> MathEvaluator.compileAll(batch).evaluate().values()[0]);
+        double evaluatedMillis = measureOnce("evaluate", () -> compiled.evaluate().values()[0]);
+        System.out.printf("shared batch speed-up: %.1fx with compilation, %.1fx evaluation only%n",
+                independentMillis / compiledMillis, independentMillis / evaluatedMillis);
+    }
+
+    private static void benchmarkDecimal() {
+        String expression = "(1250.75 * 3 - 99.99) * 1.2 / 4 + 0.05 - -(17.5 / 8)";
+        MathEvaluator evaluator = new MathEvaluator();
+
+        double binary = measure("double", () -> evaluator.calculate(expression));
+        double decimal = measure("decimal", () -> evaluator.calculateDecimal(expression).doubleValue());
+        System.out.printf("decimal costs %.1fx of double%n", decimal / binary);
+    }
+
+    private static double measureOnce(String name, DoubleSupplier call) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            call.getAsDouble();
+        }
+        double sink = 0;
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            sink += call.getAsDouble();
+        }
+        double millisPerCall = (System.nanoTime() - startedAt) / 1e6 / MEASURED_ROUNDS;
+        System.out.printf("%-12s %8.3f ms/call (checksum %s)%n", name, millisPerCall, sink);
+        return millisPerCall;
+    }
+
+    private static double measure(String name, DoubleSupplier call) {
+        double sink = 0;
+        for (int i = 0; i < WARMUP_ROUNDS * CALLS_PER_ROUND; i++) {
+            sink += call.getAsDouble();
+        }
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS * CALLS_PER_ROUND; i++) {
+            sink += call.getAsDouble();
+        }
+        double nanosPerCall = (System.nanoTime() - startedAt) / (double) (MEASURED_ROUNDS * CALLS_PER_ROUND);
+        System.out.printf("%-12s %8.2f ns/call (checksum %s)%n", name, nanosPerCall, sink);
+        return nanosPerCall;
+    }
+}
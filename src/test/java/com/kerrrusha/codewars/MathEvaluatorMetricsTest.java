@@ -0,0 +1,87 @@
+package com.kerrrusha.codewars;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.kerrrusha.codewars.MathEvaluatorMetrics.Phase.CALCULATE;
+import static com.kerrrusha.codewars.MathEvaluatorMetrics.Phase.COMPILE;
+import static com.kerrrusha.codewars.MathEvaluatorMetrics.Phase.EVALUATE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MathEvaluatorMetricsTest {
+
+    @Test
+    public void testCalculatePhase() {
+        MathEvaluator evaluator = new MathEvaluator();
+        MathEvaluatorMetrics metrics = evaluator.enableMetrics();
+        assertSame(metrics, evaluator.enableMetrics());
+
+        evaluator.calculate("1 + 2 * 3");
+        evaluator.calculate(new StringBuilder("-(4 - 1)"));
+        evaluator.calculate(ByteBuffer.wrap("2 / 8".getBytes(StandardCharsets.US_ASCII)));
+        assertThrows(IllegalStateException.class, () -> evaluator.calculate("2 + "));
+
+        MathEvaluatorMetrics.PhaseStats calculate = metrics.snapshot().phase(CALCULATE);
+        assertEquals(4, calculate.calls());
+        assertEquals(1, calculate.failures());
+        assertEquals(5 + 4 + 3 + 1, calculate.tokens());
+        assertEquals(4, Arrays.stream(calculate.latencyHistogram()).sum());
+        assertTrue(calculate.totalNanos() > 0);
+        assertTrue(calculate.percentileNanos(0.5) <= calculate.percentileNanos(1));
+        assertEquals(0, metrics.snapshot().phase(COMPILE).calls());
+    }
+
+    @Test
+    public void testCachedPhases() {
+        MathEvaluator evaluator = new MathEvaluator(16);
+        MathEvaluatorMetrics metrics = evaluator.enableMetrics();
+
+        for (int i = 0; i < 10; i++) {
+            evaluator.calculate("(1 + 1) * " + i % 2);
+        }
+
+        MathEvaluatorMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(2, snapshot.phase(COMPILE).calls());
+        assertEquals(10, snapshot.phase(COMPILE).tokens());
+        assertEquals(10, snapshot.phase(EVALUATE).calls());
+        assertEquals(0, snapshot.phase(CALCULATE).calls());
+        assertEquals(0.8, snapshot.cache().hitRate(), 0.01);
+    }
+
+    @Test
+    public void testFlightRecorderEvents(@TempDir Path directory) throws IOException {
+        MathEvaluator evaluator = new MathEvaluator(16);
+        evaluator.enableMetrics();
+        Path file = directory.resolve("math.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.kerrrusha.codewars.Parse").withoutThreshold();
+            recording.enable("com.kerrrusha.codewars.Evaluate").withoutThreshold();
+            recording.start();
+            evaluator.calculate("1 + 2");
+            evaluator.calculate("1 + 2");
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        assertEquals(1, events.stream().filter(event -> event.getEventType().getName().endsWith("Parse")).count());
+        List<RecordedEvent> evaluations = events.stream()
+                .filter(event -> event.getEventType().getName().endsWith("Evaluate"))
+                .toList();
+        assertEquals(2, evaluations.size());
+        assertEquals("EVALUATE", evaluations.get(0).getString("phase"));
+        assertEquals(5, evaluations.get(0).getInt("expressionLength"));
+        // the optimizer folded the expression into one constant
+        assertEquals(1, evaluations.get(0).getInt("tokens"));
+    }
+}
@@ -2,6 +2,23 @@ package com.kerrrusha.codewars;
 
 import org.junit.jupiter.api.Test;
 
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.DoubleSupplier;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class MathEvaluatorTest {
@@ -89,4 +106,448 @@ class MathEvaluatorTest {
     public void testComplex() {
         assertEquals(7.732, new MathEvaluator().calculate("2 / (2 + 3) * 4.33 - -6"), 0.01);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testStackedMinus() {
+        assertEquals(-4d, new MathEvaluator().calculate("- - -4"), 0.01);
+        assertEquals(2d, new MathEvaluator().calculate("1--1"), 0.01);
+        assertEquals(-6d, new MathEvaluator().calculate("-(2 + 1) * --2"), 0.01);
+    }
+
+    @Test
+    public void testLongExpression() {
+        StringBuilder expression = new StringBuilder("0");
+        double expected = 0;
+        for (int i = 1; i <= 5000; i++) {
+            expression.append(i % 2 == 0 ? " + (" : " - -(").append(i).append(" * 2 / 4)");
+            expected += i * 2 / 4d;
+        }
+        assertEquals(expected, new MathEvaluator().calculate(expression.toString()), 0.01);
+    }
+
+    @Test
+    public void testCompiled() {
+        CompiledExpression compiled = MathEvaluator.compile("(123.45*(678.90 / (-2.5+ 11.5)-(((80 -(19))) *33.25)) / 20) - (13 - 2)/ -(-11)");
+        double expected = new MathEvaluator().calculate("(123.45*(678.90 / (-2.5+ 11.5)-(((80 -(19))) *33.25)) / 20) - (13 - 2)/ -(-11)");
+        assertEquals(expected, compiled.evaluate());
+        assertEquals(expected, compiled.evaluate());
+        assertEquals("-2.0 x neg 4.0 * -", MathEvaluator.compile("-2 - -x * 4").toString());
+    }
+
+    @Test
+    public void testCompiledFromManyThreads() {
+        CompiledExpression compiled = MathEvaluator.compile("(20 / (1.5 + 3.5) * 4 + (0 + 4)) - -6");
+        double[] results = IntStream.range(0, 10_000).parallel()
+                .mapToDouble(i -> compiled.evaluate())
+                .toArray();
+        assertTrue(Arrays.stream(results).allMatch(result -> result == 26d));
+    }
+
+    @Test
+    public void testCache() {
+        MathEvaluator evaluator = new MathEvaluator(16);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(26, evaluator.calculate("(20 / (1.5 + 3.5) * 4 + (0 + 4)) - -6"), 0.01);
+        }
+        MathEvaluator.CacheStats stats = evaluator.cacheStats();
+        assertEquals(2, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(0, stats.evictions());
+        assertEquals(1, stats.size());
+    }
+
+    @Test
+    public void testSmallCacheHoldsItsSize() {
+        MathEvaluator evaluator = new MathEvaluator(4);
+        for (int round = 0; round < 2; round++) {
+            for (int i = 1; i <= 4; i++) {
+                assertEquals(i * 2, evaluator.calculate(i + " * 2"), 0.01);
+            }
+        }
+        MathEvaluator.CacheStats stats = evaluator.cacheStats();
+        assertEquals(4, stats.hits());
+        assertEquals(4, stats.misses());
+        assertEquals(0, stats.evictions());
+        assertEquals(4, stats.size());
+
+        MathEvaluator single = new MathEvaluator(1);
+        single.calculate("1 + 1");
+        single.calculate("1 + 1");
+        assertEquals(1, single.cacheStats().hits());
+        assertEquals(1, single.cacheStats().size());
+    }
+
+    @Test
+    public void testCacheEviction() {
+        MathEvaluator evaluator = new MathEvaluator(16);
+        IntStream.range(0, 1000).parallel()
+                .forEach(i -> assertEquals(i % 100 + 1, evaluator.calculate((i % 100) + " + 1"), 0.01));
+        MathEvaluator.CacheStats stats = evaluator.cacheStats();
+        assertEquals(1000, stats.hits() + stats.misses());
+        assertTrue(stats.size() <= 16);
+        assertTrue(stats.evictions() >= 100 - 16);
+    }
+
+    @Test
+    public void testNumberLiterals() {
+        MathEvaluator evaluator = new MathEvaluator();
+        for (String literal : List.of("0.1", "0.000123", "123456789.987654321", "9007199254740993", "1234567890123456789012.5", "007.50")) {
+            assertEquals(Double.parseDouble(literal), evaluator.calculate(literal));
+        }
+    }
+
+    @Test
+    public void testCalculateDoesNotAllocate() {
+        MathEvaluator evaluator = new MathEvaluator();
+        String expression = "(123.45*(678.90 / (-2.5+ 11.5)-(((80 -(19))) *33.25)) / 20) - (13 - 2)/ -(-11)";
+        assertEquals(0, allocatedBytesPerCall(() -> evaluator.calculate(expression)));
+    }
+
+    @Test
+    public void testCompiledEvaluateDoesNotAllocate() {
+        CompiledExpression compiled = MathEvaluator.compile("(123.45*(678.90 / (-2.5+ 11.5)-(((80 -(19))) *33.25)) / 20) - (13 - 2)/ -(-11)");
+        assertEquals(0, allocatedBytesPerCall(compiled::evaluate));
+    }
+
+    private static long allocatedBytesPerCall(DoubleSupplier call) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        final int calls = 100_000;
+        double sink = 0;
+        for (int i = 0; i < calls; i++) {
+            sink += call.getAsDouble();
+        }
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < calls; i++) {
+            sink += call.getAsDouble();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertFalse(Double.isNaN(sink));
+        return allocated / calls;
+    }
+
+    @Test
+    public void testBufferSources() {
+        MathEvaluator evaluator = new MathEvaluator();
+        String expression = "12* 123/-(-5 + 2)";
+        char[] chars = ("[" + expression + "]").toCharArray();
+        ByteBuffer bytes = ByteBuffer.wrap(("[" + expression + "]").getBytes(StandardCharsets.US_ASCII));
+        bytes.position(1).limit(bytes.limit() - 1);
+
+        assertEquals(492, evaluator.calculate(new StringBuilder(expression)), 0.01);
+        assertEquals(492, evaluator.calculate(chars, 1, expression.length()), 0.01);
+        assertEquals(492, evaluator.calculate(CharBuffer.wrap(chars, 1, expression.length())), 0.01);
+        assertEquals(492, evaluator.calculate(bytes), 0.01);
+        assertEquals(1, bytes.position());
+        assertEquals(492, MathEvaluator.compile(bytes).evaluate(), 0.01);
+        assertEquals(492, MathEvaluator.compile(chars, 1, expression.length()).evaluate(), 0.01);
+    }
+
+    @Test
+    public void testByteBufferDoesNotAllocate() {
+        MathEvaluator evaluator = new MathEvaluator();
+        ByteBuffer expression = ByteBuffer.allocateDirect(64)
+                .put("(20 / (1.5 + 3.5) * 4 + (0 + 4)) - -6".getBytes(StandardCharsets.US_ASCII))
+                .flip();
+        assertEquals(0, allocatedBytesPerCall(() -> evaluator.calculate(expression)));
+    }
+
+    @Test
+    public void testVariables() {
+        CompiledExpression compiled = MathEvaluator.compile("(a - b) / (c * 2) + a");
+        assertEquals(List.of("a", "b", "c"), compiled.variables());
+        assertEquals(5.5, compiled.evaluate(5, 3, 2), 0.01);
+        assertThrows(IllegalArgumentException.class, () -> compiled.evaluate(5, 3));
+        assertThrows(IllegalArgumentException.class, () -> new MathEvaluator().calculate("a + 1"));
+    }
+
+    @Test
+    public void testColumns() {
+        CompiledExpression compiled = MathEvaluator.compile("(a - b) / (c * 2) - -a");
+        int rows = 5000;
+        double[] a = new double[rows];
+        double[] b = new double[rows];
+        double[] c = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            a[i] = i;
+            b[i] = i % 7;
+            c[i] = i % 5 + 1;
+        }
+        double[] output = new double[rows];
+        compiled.evaluate(Map.of("a", a, "b", b, "c", c), output);
+        for (int i = 0; i < rows; i++) {
+            assertEquals(compiled.evaluate(a[i], b[i], c[i]), output[i]);
+        }
+    }
+
+    @Test
+    public void testCalculateAll() {
+        List<String> expressions = IntStream.range(0, 10_000)
+                .mapToObj(i -> i % 1000 == 0 ? i + " + " : i + " * 2")
+                .toList();
+        MathEvaluator.BatchResult result = new MathEvaluator().calculateAll(expressions);
+        assertEquals(10, result.failures().size());
+        for (int i = 0; i < expressions.size(); i++) {
+            if (i % 1000 == 0) {
+                assertTrue(result.failed(i));
+                assertTrue(Double.isNaN(result.values()[i]));
+            } else {
+                assertEquals(i * 2, result.values()[i], 0.01);
+            }
+        }
+    }
+
+    @Test
+    public void testCalculateAllStreaming() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Long> failedIndexes = new ArrayList<>();
+            double[] sum = new double[1];
+            long[] nextIndex = new long[1];
+            new MathEvaluator(64).calculateAll(
+                    IntStream.range(0, 100_000).mapToObj(i -> i % 10_000 == 5 ? "(" : (i % 50) + " - 1").iterator(),
+                    executor,
+                    new MathEvaluator.BatchConsumer() {
+                        @Override
+                        public void accept(long index, double value) {
+                            assertEquals(nextIndex[0]++, index);
+                            sum[0] += value;
+                        }
+
+                        @Override
+                        public void failed(long index, RuntimeException failure) {
+                            assertEquals(nextIndex[0]++, index);
+                            failedIndexes.add(index);
+                        }
+                    });
+            assertEquals(100_000, nextIndex[0]);
+            assertEquals(10, failedIndexes.size());
+            assertEquals(5, failedIndexes.get(0));
+            assertEquals(2_350_000 - 10 * 4, sum[0], 0.01);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testOptimizer() {
+        CompiledExpression folded = MathEvaluator.compile("(2 + 3) * (4 - -1) / 5");
+        assertEquals("5.0", folded.toString());
+        assertEquals(9, folded.eliminatedNodes());
+
+        CompiledExpression simplified = MathEvaluator.compile("1 * (a - 0) / 1 - - - -b * (3 - 2)");
+        assertEquals("a b +", simplified.toString());
+        assertEquals(13, simplified.eliminatedNodes());
+        assertEquals(7, simplified.evaluate(3, 4));
+
+        CompiledExpression rewritten = MathEvaluator.compile("a - -(b * 2) + -c");
+        assertEquals("a b 2.0 * + c -", rewritten.toString());
+        assertEquals(2, rewritten.evaluate(1, 2, 3));
+    }
+
+    @Test
+    public void testOptimizerKeepsSignOfZero() {
+        // for x = -0.0, x + 0.0 and x - -0.0 are 0.0, so they must not be simplified to x
+        for (String expression : List.of("x + 0", "0 + x", "x - -0", "x + (0 - 0)")) {
+            CompiledExpression compiled = MathEvaluator.compile(expression);
+            assertEquals(Double.POSITIVE_INFINITY, 1 / compiled.evaluate(-0.0), expression);
+            assertEquals(Double.POSITIVE_INFINITY, 1 / compiled.specialize().applyAsDouble(new double[]{-0.0}), expression);
+        }
+        for (String expression : List.of("x + -0", "-0 + x", "x - 0")) {
+            CompiledExpression compiled = MathEvaluator.compile(expression);
+            assertEquals("x", compiled.toString(), expression);
+            assertEquals(Double.NEGATIVE_INFINITY, 1 / compiled.evaluate(-0.0), expression);
+        }
+    }
+
+    @Test
+    public void testSpecialized() {
+        String expression = "(a - b) / (c * 2) - -a * 1.5 + 7 / (b - 0.25) - a*a*a";
+        CompiledExpression compiled = MathEvaluator.compile(expression);
+        ToDoubleFunction<double[]> specialized = compiled.specialize();
+        assertNotEquals(compiled.getClass(), specialized.getClass());
+        for (int i = 0; i < 100; i++) {
+            double[] values = {i, i % 7, i % 5 + 1};
+            assertEquals(compiled.evaluate(values), specialized.applyAsDouble(values));
+        }
+    }
+
+    @Test
+    public void testSpecializedFallsBackForHugeExpressions() {
+        String expression = "a" + " + a * 2".repeat(5000);
+        ToDoubleFunction<double[]> specialized = MathEvaluator.compile(expression).specialize();
+        assertEquals(10_001, specialized.applyAsDouble(new double[]{1}), 0.01);
+    }
+
+    @Test
+    public void testMillionNestingLevels() {
+        int depth = 1_000_000;
+        MathEvaluator evaluator = new MathEvaluator();
+
+        String parentheses = "(".repeat(depth) + "7" + ")".repeat(depth);
+        assertEquals(7, evaluator.calculate(parentheses), 0.01);
+        assertEquals(7, MathEvaluator.compile(parentheses).evaluate(), 0.01);
+
+        String negations = "-(".repeat(depth) + "7" + ")".repeat(depth);
+        assertEquals(7, evaluator.calculate(negations), 0.01);
+        assertEquals(7, MathEvaluator.compile(negations).evaluate(), 0.01);
+
+        // every level leaves an operand waiting on the stack: 1 - (1 - (1 - ... x)), which is x for an even depth
+        String rightNested = "1 - (".repeat(depth) + "x" + ")".repeat(depth);
+        CompiledExpression compiled = MathEvaluator.compile(rightNested);
+        assertEquals(3, compiled.evaluate(3), 0.01);
+        assertEquals(5, evaluator.calculate(rightNested.replace('x', '5')), 0.01);
+        assertEquals(3, compiled.specialize().applyAsDouble(new double[]{3}), 0.01);
+        double[] output = new double[2];
+        compiled.evaluate(new double[][]{{3, 4}}, output);
+        assertArrayEquals(new double[]{3, 4}, output, 0.01);
+    }
+
+    @Test
+    public void testUnbalancedDeepNesting() {
+        int depth = 1_000_000;
+        assertThrows(IllegalStateException.class, () -> new MathEvaluator().calculate("(".repeat(depth) + "1" + ")".repeat(depth - 1)));
+        assertThrows(IllegalStateException.class, () -> new MathEvaluator().calculate("(".repeat(depth - 1) + "1" + ")".repeat(depth)));
+    }
+
+    @Test
+    public void testParallelHugeExpression() {
+        StringBuilder sum = new StringBuilder();
+        for (int i = 1; i <= 200_000; i++) {
+            sum.append(i == 1 ? "" : i % 3 == 0 ? " - " : " + ").append(i % 97).append(".25 * ").append(i % 13)
+                    .append(i % 5 == 0 ? " / -(3 - 1.5)" : "");
+        }
+        String expression = "-(" + sum + ") / 7 * (" + sum + " - 1) - -((" + sum + "))";
+        double sequential = new MathEvaluator().calculate(expression);
+
+        MathEvaluator evaluator = new MathEvaluator();
+        evaluator.setParallelThreshold(10_000);
+        assertEquals(sequential, evaluator.calculate(expression));
+        assertEquals(sequential, evaluator.calculate(new StringBuilder(expression)));
+    }
+
+    @Test
+    public void testParallelForEveryInput() {
+        String sum = "1.5 * 2 - 4 / 8 + ".repeat(1000) + "1";
+        double sequential = new MathEvaluator().calculate(sum);
+        MathEvaluator evaluator = new MathEvaluator();
+        evaluator.setParallelThreshold(1000);
+        MathEvaluatorMetrics metrics = evaluator.enableMetrics();
+
+        char[] chars = ("[" + sum + "]").toCharArray();
+        assertEquals(sequential, evaluator.calculate(chars, 1, sum.length()));
+        assertEquals(sequential, evaluator.calculate(CharBuffer.wrap(chars, 1, sum.length())));
+        ByteBuffer bytes = ByteBuffer.allocateDirect(sum.length() + 1).put((byte) '[').put(sum.getBytes(StandardCharsets.US_ASCII));
+        bytes.flip().position(1);
+        assertEquals(sequential, evaluator.calculate(bytes));
+        assertEquals(1, bytes.position());
+
+        // the parallel path does not count the tokens of the pieces it parses on other threads
+        MathEvaluatorMetrics.PhaseStats calculations = metrics.snapshot().phase(MathEvaluatorMetrics.Phase.CALCULATE);
+        assertEquals(3, calculations.calls());
+        assertEquals(0, calculations.tokens());
+    }
+
+    @Test
+    public void testParallelNegatedGroups() {
+        MathEvaluator evaluator = new MathEvaluator();
+        evaluator.setParallelThreshold(1);
+        assertEquals(-5, evaluator.calculate("-(5)"), 0.01);
+        assertEquals(5, evaluator.calculate("2 - -(3)"), 0.01);
+        assertEquals(-6, evaluator.calculate("-(-(-(2 * 3)))"), 0.01);
+
+        // more groups than the parallel evaluation unwraps, with the sign in front of all of them
+        String sum = "1" + " + 1".repeat(300_000);
+        String nested = "-" + "(".repeat(20) + sum + ")".repeat(20);
+        assertEquals(-300_001, new MathEvaluator().calculate(nested), 0.01);
+    }
+
+    @Test
+    public void testParallelFailuresMatchSequential() {
+        MathEvaluator evaluator = new MathEvaluator();
+        evaluator.setParallelThreshold(100);
+        String sum = "1 + 2 * 3".repeat(100);
+        for (String expression : List.of(sum + " + (", "(" + sum + " +) * 2", sum + " * 4)", sum + " + x")) {
+            RuntimeException sequential = assertThrows(RuntimeException.class, () -> new MathEvaluator().calculate(expression));
+            RuntimeException parallel = assertThrows(RuntimeException.class, () -> evaluator.calculate(expression));
+            assertEquals(sequential.getClass(), parallel.getClass());
+            assertEquals(sequential.getMessage(), parallel.getMessage());
+        }
+        assertThrows(IllegalArgumentException.class, () -> evaluator.setParallelThreshold(0));
+    }
+
+    @Test
+    public void testDecimal() {
+        MathEvaluator evaluator = new MathEvaluator();
+        assertEquals(new BigDecimal("0.3"), evaluator.calculateDecimal("0.1 + 0.2"));
+        assertEquals(new BigDecimal("3.30"), evaluator.calculateDecimal("1.10 * 3"));
+        assertEquals(new BigDecimal("2.5"), evaluator.calculateDecimal("10 / 4"));
+        assertEquals(new BigDecimal("200"), evaluator.calculateDecimal("100 / 0.5"));
+        assertEquals(new BigDecimal("-0.125"), evaluator.calculateDecimal("1 / -8"));
+        assertEquals(new BigDecimal("-1.50"), evaluator.calculateDecimal("-(1.5 - 2.25) * -2"));
+        assertEquals(BigDecimal.ONE.divide(new BigDecimal(3), MathContext.DECIMAL128), evaluator.calculateDecimal("1 / 3"));
+        assertEquals(new BigDecimal("9223372036854775808"), evaluator.calculateDecimal("9223372036854775807 + 1"));
+        assertEquals(new BigDecimal("-9223372036854775808"), evaluator.calculateDecimal("-(9223372036854775807 + 1)"));
+        assertEquals(new BigDecimal("12345678901234567890.123456789"),
+                evaluator.calculateDecimal("12345678901234567890.123456789 * 1"));
+        assertEquals(0, new BigDecimal("0.5").compareTo(
+                evaluator.calculateDecimal("(9223372036854775807 + 1) * 0.1 / 922337203685477580.8 * 0.5")));
+        assertThrows(ArithmeticException.class, () -> evaluator.calculateDecimal("1 / (2 - 2)"));
+        assertThrows(IllegalArgumentException.class, () -> evaluator.calculateDecimal("x + 1"));
+        assertThrows(IllegalStateException.class, () -> evaluator.calculateDecimal("1 +"));
+
+        evaluator.setDecimalContext(new MathContext(5));
+        assertEquals(new BigDecimal("0.66667"), evaluator.calculateDecimal("2 / 3"));
+        assertEquals(new BigDecimal("0.5"), evaluator.calculateDecimal("2 / 4"));
+    }
+
+    @Test
+    public void testDecimalMatchesBigDecimal() {
+        Random random = new Random(17);
+        MathEvaluator evaluator = new MathEvaluator();
+        // products of this size overflow longs; unlimited precision keeps the BigDecimal fallback exact too
+        evaluator.setDecimalContext(MathContext.UNLIMITED);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder expression = new StringBuilder();
+            BigDecimal expected = appendRandomDecimal(random, expression, 4);
+            assertEquals(0, expected.compareTo(evaluator.calculateDecimal(expression)), expression::toString);
+        }
+    }
+
+    // Appends a random expression that only divides by powers of two and five, so its exact value is finite.
+    private static BigDecimal appendRandomDecimal(Random random, StringBuilder expression, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            BigDecimal value = BigDecimal.valueOf(random.nextInt(100_000), random.nextInt(4));
+            expression.append(value.toPlainString());
+            return value;
+        }
+        expression.append('(');
+        BigDecimal left = appendRandomDecimal(random, expression, depth - 1);
+        BigDecimal result;
+        switch (random.nextInt(5)) {
+            case 0 -> {
+                expression.append(" + ");
+                result = left.add(appendRandomDecimal(random, expression, depth - 1));
+            }
+            case 1 -> {
+                expression.append(" - ");
+                result = left.subtract(appendRandomDecimal(random, expression, depth - 1));
+            }
+            case 2 -> {
+                expression.append(" * ");
+                result = left.multiply(appendRandomDecimal(random, expression, depth - 1));
+            }
+            case 3 -> {
+                int divisor = new int[]{2, 4, 5, 8, 25, 40}[random.nextInt(6)];
+                expression.append(" / ").append(divisor);
+                result = left.divide(BigDecimal.valueOf(divisor));
+            }
+            default -> {
+                expression.append(" * -");
+                result = left.negate().multiply(appendRandomDecimal(random, expression, depth - 1));
+            }
+        }
+        expression.append(')');
+        return result;
+    }
+}